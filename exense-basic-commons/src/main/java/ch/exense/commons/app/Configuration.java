@@ -19,35 +19,80 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.StringReader;
-import java.nio.file.Files;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ch.exense.commons.io.FileWatchService;
 
+/**
+ * Properties loaded from a property file, with placeholders resolved at load time. Placeholders have the form
+ * <code>${key}</code> or <code>${key:default}</code> and can be nested, see {@link PropertiesParser}.
+ *
+ * <p>A configuration can also be made of several layers (files, system properties, environment variables...), see
+ * {@link ConfigurationSource}. The properties of a layer override the ones of the previous layers and the properties
+ * set using {@link #putProperty(String, String)} override all layers.</p>
+ *
+ * <p>The merged properties are held in an immutable snapshot published through a volatile reference: lookups are
+ * lock-free and don't depend on the number of layers. A reload of a layer or a call of
+ * {@link #putProperty(String, String)} atomically replaces the snapshot.</p>
+ */
 public class Configuration implements Closeable {
 
     private static final Logger logger = LoggerFactory.getLogger(Configuration.class);
 
-    private FileWatchService fileWatchService;
+    private final List<FileWatchService.Registration> fileWatchRegistrations = new ArrayList<>();
 
     private File propertyFile;
 
-    private Properties properties;
+    private final List<ConfigurationSource> sources;
+
+    // the properties of each source, in the order of the sources
+    private final PropertySnapshot[] layers;
+
+    // the properties set using putProperty(), overriding all layers
+    private PropertySnapshot overrides = PropertySnapshot.EMPTY;
+
+    // the merged properties of all layers and overrides
+    private volatile PropertySnapshot snapshot = PropertySnapshot.EMPTY;
+
+    private final List<ListenerRegistration> listeners = new CopyOnWriteArrayList<>();
+
+    // serializes the reads and publications of the layers, so that a layer read earlier doesn't replace a layer read
+    // later. Distinct from the lock of this Configuration, which isn't held while the layers are read
+    private final Object reloadLock = new Object();
+
+    // the compatibility view of the properties, see getUnderlyingPropertyObject()
+    private volatile PropertiesView propertiesView;
 
     private Map<String, String> placeholders;
 
     public Configuration() {
         super();
-        properties = new Properties();
+        sources = Collections.emptyList();
+        layers = new PropertySnapshot[0];
     }
 
     public Configuration(File propertyFile) throws IOException {
@@ -55,71 +100,249 @@ public class Configuration implements Closeable {
     }
 
     public Configuration(File propertyFile, Map<String, String> placeholders) throws IOException {
+        this(propertyFile, placeholders, FileWatchService.getSharedInstance());
+    }
+
+    /**
+     * @param propertyFile     the property file
+     * @param placeholders     the values of the placeholders used in the property file
+     * @param fileWatchService the service used to watch the property file if conf.scan is enabled. The service
+     *                         isn't closed together with this {@link Configuration}
+     * @throws IOException if the property file can't be read
+     */
+    public Configuration(File propertyFile, Map<String, String> placeholders, FileWatchService fileWatchService) throws IOException {
+        this(propertyFile != null ? List.of(ConfigurationSource.file(propertyFile)) : List.of(), placeholders, fileWatchService);
+    }
+
+    /**
+     * @param sources      the layers of this configuration, the properties of a layer overriding the ones of the
+     *                     previous layers
+     * @param placeholders the values of the placeholders used in the property files
+     * @throws IOException if a layer can't be read
+     */
+    public Configuration(List<ConfigurationSource> sources, Map<String, String> placeholders) throws IOException {
+        this(sources, placeholders, FileWatchService.getSharedInstance());
+    }
+
+    /**
+     * @param sources          the layers of this configuration, the properties of a layer overriding the ones of the
+     *                         previous layers
+     * @param placeholders     the values of the placeholders used in the property files
+     * @param fileWatchService the service used to watch the property files if conf.scan is enabled. The service
+     *                         isn't closed together with this {@link Configuration}
+     * @throws IOException if a layer can't be read
+     */
+    public Configuration(List<ConfigurationSource> sources, Map<String, String> placeholders, FileWatchService fileWatchService) throws IOException {
         super();
 
-        this.propertyFile = propertyFile;
+        this.sources = List.copyOf(sources);
+        this.layers = new PropertySnapshot[this.sources.size()];
         this.placeholders = placeholders;
+        this.propertyFile = this.sources.stream().map(ConfigurationSource::getFile).filter(Objects::nonNull).findFirst().orElse(null);
 
         load();
 
         if (getPropertyAsBoolean("conf.scan", false)) {
-            fileWatchService = new FileWatchService();
-            fileWatchService.register(propertyFile, new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        load();
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
+            for (int i = 0; i < this.sources.size(); i++) {
+                File file = this.sources.get(i).getFile();
+                if (file != null) {
+                    int layer = i;
+                    // only the modified layer is reloaded
+                    fileWatchRegistrations.add(fileWatchService.subscribe(file, new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                reloadLayer(layer);
+                            } catch (Exception e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    }, false));
                 }
-            });
+            }
         }
     }
 
+    /**
+     * Reloads all layers. The properties set using {@link #putProperty(String, String)} are discarded
+     *
+     * @throws IOException if a layer can't be read
+     */
     public void load() throws FileNotFoundException, IOException {
-        properties = new Properties();
-        if (propertyFile != null) {
-            String propertiesContent = new String(Files.readAllBytes(propertyFile.toPath()));
-            String resolvedPropertiesContent = replacePlaceholders(propertiesContent);
-            properties.load(new StringReader(resolvedPropertiesContent));
-        }
-    }
-
-    private String replacePlaceholders(String configXml) {
-        StringBuffer sb = new StringBuffer();
-        Matcher m = Pattern.compile("\\$\\{(.+?)\\}").matcher(configXml);
-        while (m.find()) {
-            String key = m.group(1);
-            if (placeholders != null) {
-                String replacement = placeholders.get(key.toLowerCase());
-                if (replacement == null) {
-                    throw new RuntimeException("Missing placeholder '" + key + "'.");
-                } else {
-                    m.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+        Set<String> changedKeys;
+        synchronized (reloadLock) {
+            PropertySnapshot[] newLayers = new PropertySnapshot[layers.length];
+            for (int i = 0; i < newLayers.length; i++) {
+                newLayers[i] = PropertySnapshot.of(sources.get(i).load(placeholders));
+            }
+            synchronized (this) {
+                System.arraycopy(newLayers, 0, layers, 0, newLayers.length);
+                overrides = PropertySnapshot.EMPTY;
+                changedKeys = publish(merge());
+            }
+        }
+        // outside of the lock, as the modifications of the view are made while holding its lock
+        refreshPropertiesView();
+        notifyListeners(changedKeys);
+    }
+
+    private void reloadLayer(int layer) throws IOException {
+        logger.debug("Reloading " + sources.get(layer));
+        Set<String> changedKeys;
+        synchronized (reloadLock) {
+            PropertySnapshot newLayer = PropertySnapshot.of(sources.get(layer).load(placeholders));
+            synchronized (this) {
+                layers[layer] = newLayer;
+                changedKeys = publish(merge());
+            }
+        }
+        // outside of the lock, as the modifications of the view are made while holding its lock
+        refreshPropertiesView();
+        notifyListeners(changedKeys);
+    }
+
+    private PropertySnapshot merge() {
+        PropertySnapshot merged;
+        if (layers.length == 1) {
+            merged = layers[0];
+        } else {
+            Map<String, String> properties = new LinkedHashMap<>();
+            for (PropertySnapshot layer : layers) {
+                layer.forEach(properties::put);
+            }
+            merged = PropertySnapshot.of(properties);
+        }
+        if (overrides.size() > 0) {
+            Map<String, String> properties = merged.toMap();
+            overrides.forEach(properties::put);
+            merged = PropertySnapshot.of(properties);
+        }
+        return merged;
+    }
+
+    /**
+     * Replaces the current snapshot. Has to be called while holding the lock of this {@link Configuration}
+     *
+     * @param newSnapshot the new snapshot
+     * @return the keys whose value changed, only computed if listeners are registered
+     */
+    private Set<String> publish(PropertySnapshot newSnapshot) {
+        PropertySnapshot oldSnapshot = snapshot;
+        snapshot = newSnapshot;
+        return listeners.isEmpty() ? Collections.emptySet() : oldSnapshot.diff(newSnapshot);
+    }
+
+    private void notifyListeners(Set<String> changedKeys) {
+        if (changedKeys.isEmpty()) {
+            return;
+        }
+        for (ListenerRegistration registration : listeners) {
+            Set<String> keys = registration.filter(changedKeys);
+            if (!keys.isEmpty()) {
+                try {
+                    registration.listener.onChange(this, keys);
+                } catch (Exception e) {
+                    logger.error("Error while notifying listener " + registration.listener, e);
                 }
-            } else {
-                throw new RuntimeException("Unable to replace placeholders. Placeholder map is null. This should never occur.");
             }
         }
-        m.appendTail(sb);
-        return sb.toString();
     }
 
+    /**
+     * Registers a listener notified when the value of a property changes, either because a layer has been reloaded or
+     * because the property has been set explicitly. Listeners are called synchronously by the thread that changed the
+     * properties
+     *
+     * @param key      the name of the property
+     * @param listener the listener
+     */
+    public void addChangeListener(String key, ChangeListener listener) {
+        listeners.add(new ListenerRegistration(Objects.requireNonNull(key), false, Objects.requireNonNull(listener)));
+    }
+
+    /**
+     * Registers a listener notified when the value of properties starting with the provided prefix change, see
+     * {@link #addChangeListener(String, ChangeListener)}
+     *
+     * @param prefix   the prefix of the properties, the empty string to be notified of all changes
+     * @param listener the listener
+     */
+    public void addPrefixChangeListener(String prefix, ChangeListener listener) {
+        listeners.add(new ListenerRegistration(Objects.requireNonNull(prefix), true, Objects.requireNonNull(listener)));
+    }
+
+    /**
+     * Removes all registrations of a listener
+     *
+     * @param listener the listener to be removed
+     */
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.removeIf(registration -> registration.listener == listener);
+    }
+
+    /**
+     * @return the layers of this configuration
+     */
+    public List<ConfigurationSource> getSources() {
+        return sources;
+    }
+
+    /**
+     * @return a live {@link Properties} view of the properties, kept for compatibility. The view reflects the reloads
+     * and the modifications of this {@link Configuration}, and all its modifications, including the ones made through
+     * its key, entry and value collections, are written through to this {@link Configuration} like
+     * {@link #putProperty(String, String)}. Only {@link String} keys and values are supported. Once requested, the
+     * view is refreshed on each modification of this {@link Configuration}: prefer the getters of this class
+     */
     public Properties getUnderlyingPropertyObject() {
-        return this.properties;
+        PropertiesView view = propertiesView;
+        if (view == null) {
+            synchronized (this) {
+                if (propertiesView == null) {
+                    propertiesView = new PropertiesView(this);
+                }
+                view = propertiesView;
+            }
+        }
+        return view;
+    }
+
+    private void refreshPropertiesView() {
+        PropertiesView view = propertiesView;
+        if (view != null) {
+            view.refresh();
+        }
     }
 
     public String getProperty(String name) {
-        return properties.getProperty(name);
+        return snapshot.get(name);
     }
 
     public String getProperty(String name, String defaultValue) {
-        return properties.getProperty(name, defaultValue);
+        String value = snapshot.get(name);
+        return value != null ? value : defaultValue;
     }
 
     public void putProperty(String name, String value) {
-        properties.put(name, value);
+        Set<String> changedKeys;
+        synchronized (this) {
+            overrides = overrides.with(name, value);
+            changedKeys = publish(snapshot.with(name, value));
+        }
+        // outside of the lock, as the modifications of the view are made while holding its lock
+        refreshPropertiesView();
+        notifyListeners(changedKeys);
+    }
+
+    private void removeProperty(String name) {
+        Set<String> changedKeys;
+        synchronized (this) {
+            overrides = overrides.without(name);
+            changedKeys = publish(snapshot.without(name));
+        }
+        // outside of the lock, as the modifications of the view are made while holding its lock
+        refreshPropertiesView();
+        notifyListeners(changedKeys);
     }
 
     public Integer getPropertyAsInteger(String name) {
@@ -127,7 +350,7 @@ public class Configuration implements Closeable {
     }
 
     public Integer getPropertyAsInteger(String name, Integer defaultValue) {
-        String prop = properties.getProperty(name);
+        String prop = snapshot.get(name);
         if (prop != null) {
             return Integer.parseInt(prop);
         } else {
@@ -140,7 +363,7 @@ public class Configuration implements Closeable {
     }
 
     public Long getPropertyAsLong(String name, Long defaultValue) {
-        String prop = properties.getProperty(name);
+        String prop = snapshot.get(name);
         if (prop != null) {
             return Long.parseLong(prop);
         } else {
@@ -153,11 +376,11 @@ public class Configuration implements Closeable {
     }
 
     public boolean hasProperty(String name) {
-        return properties.containsKey(name);
+        return snapshot.containsKey(name);
     }
 
     public boolean getPropertyAsBoolean(String name, boolean defaultValue) {
-        String prop = properties.getProperty(name);
+        String prop = snapshot.get(name);
         if (prop != null) {
             return Boolean.parseBoolean(prop);
         } else {
@@ -170,7 +393,7 @@ public class Configuration implements Closeable {
     }
 
     public File getPropertyAsFile(String name, File defaultValue) {
-        String prop = properties.getProperty(name);
+        String prop = snapshot.get(name);
         if (prop != null) {
             return new File(prop);
         } else {
@@ -183,7 +406,7 @@ public class Configuration implements Closeable {
     }
 
     public File getPropertyAsDirectory(String name, File defaultValue) {
-        String prop = properties.getProperty(name);
+        String prop = snapshot.get(name);
         File file;
         if (prop != null) {
             file = new File(prop);
@@ -196,15 +419,65 @@ public class Configuration implements Closeable {
         return file;
     }
 
+    /**
+     * Returns a handle to an integer property. The value is parsed once per reload of the properties, the handle
+     * can therefore be kept and called in hot paths
+     *
+     * @param name         the name of the property
+     * @param defaultValue the value returned if the property isn't defined
+     * @return the handle to the property
+     */
+    public IntProperty intProperty(String name, int defaultValue) {
+        return new IntProperty(this, name, defaultValue);
+    }
+
+    /**
+     * Returns a handle to a long property, see {@link #intProperty(String, int)}
+     *
+     * @param name         the name of the property
+     * @param defaultValue the value returned if the property isn't defined
+     * @return the handle to the property
+     */
+    public LongProperty longProperty(String name, long defaultValue) {
+        return new LongProperty(this, name, defaultValue);
+    }
+
+    /**
+     * Returns a handle to a boolean property, see {@link #intProperty(String, int)}
+     *
+     * @param name         the name of the property
+     * @param defaultValue the value returned if the property isn't defined
+     * @return the handle to the property
+     */
+    public BooleanProperty booleanProperty(String name, boolean defaultValue) {
+        return new BooleanProperty(this, name, defaultValue);
+    }
+
+    /**
+     * Returns a handle to a file property, see {@link #intProperty(String, int)}
+     *
+     * @param name         the name of the property
+     * @param defaultValue the value returned if the property isn't defined
+     * @return the handle to the property
+     */
+    public FileProperty fileProperty(String name, File defaultValue) {
+        return new FileProperty(this, name, defaultValue);
+    }
+
+    /**
+     * @return the property file or, for a configuration made of several layers, the file of the first file layer
+     */
     public File getPropertyFile() {
         return propertyFile;
     }
 
     /**
-     * @return the {@link Set} of property names (keys) contained in this {@link Configuration}
+     * @return the {@link Set} of property names (keys) contained in this {@link Configuration} at the time of the call.
+     * The set is unmodifiable and doesn't reflect later modifications, use the key set of
+     * {@link #getUnderlyingPropertyObject()} for a live and modifiable view
      */
     public Set<Object> getPropertyNames() {
-        return properties.keySet();
+        return snapshot.getNames();
     }
 
     public Map<String, String> getPlaceholders() {
@@ -213,8 +486,440 @@ public class Configuration implements Closeable {
 
     @Override
     public void close() throws IOException {
-        if (fileWatchService != null) {
-            fileWatchService.close();
+        fileWatchRegistrations.forEach(FileWatchService.Registration::close);
+    }
+
+    /**
+     * Listener of the changes of the properties of a {@link Configuration}
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+
+        /**
+         * @param configuration the configuration whose properties changed
+         * @param changedKeys   the keys of the properties that have been added, removed or modified and match the
+         *                      subscription of this listener
+         */
+        void onChange(Configuration configuration, Set<String> changedKeys);
+    }
+
+    private static final class ListenerRegistration {
+
+        private final String key;
+        private final boolean prefix;
+        private final ChangeListener listener;
+
+        private ListenerRegistration(String key, boolean prefix, ChangeListener listener) {
+            this.key = key;
+            this.prefix = prefix;
+            this.listener = listener;
+        }
+
+        private Set<String> filter(Set<String> changedKeys) {
+            if (!prefix) {
+                return changedKeys.contains(key) ? Collections.singleton(key) : Collections.emptySet();
+            } else if (key.isEmpty()) {
+                return changedKeys;
+            }
+            Set<String> keys = new HashSet<>();
+            for (String changedKey : changedKeys) {
+                if (changedKey.startsWith(key)) {
+                    keys.add(changedKey);
+                }
+            }
+            return Collections.unmodifiableSet(keys);
+        }
+    }
+
+    /**
+     * Handle to a property whose parsed value is cached until the properties of the {@link Configuration} change
+     */
+    public abstract static class TypedProperty {
+
+        private final Configuration configuration;
+        private final String name;
+        private volatile ParsedValue parsedValue;
+
+        private TypedProperty(Configuration configuration, String name) {
+            this.configuration = configuration;
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        ParsedValue parsedValue() {
+            PropertySnapshot snapshot = configuration.snapshot;
+            ParsedValue parsedValue = this.parsedValue;
+            if (parsedValue == null || parsedValue.snapshot != snapshot) {
+                parsedValue = parse(snapshot, snapshot.get(name));
+                this.parsedValue = parsedValue;
+            }
+            return parsedValue;
+        }
+
+        /**
+         * @param snapshot the snapshot the value has been read from
+         * @param value    the value of the property or null if it isn't defined
+         * @return the parsed value
+         */
+        abstract ParsedValue parse(PropertySnapshot snapshot, String value);
+    }
+
+    private static final class ParsedValue {
+
+        private final PropertySnapshot snapshot;
+        private final long primitive;
+        private final Object object;
+
+        private ParsedValue(PropertySnapshot snapshot, long primitive, Object object) {
+            this.snapshot = snapshot;
+            this.primitive = primitive;
+            this.object = object;
+        }
+    }
+
+    public static final class IntProperty extends TypedProperty implements IntSupplier {
+
+        private final int defaultValue;
+
+        private IntProperty(Configuration configuration, String name, int defaultValue) {
+            super(configuration, name);
+            this.defaultValue = defaultValue;
+        }
+
+        @Override
+        ParsedValue parse(PropertySnapshot snapshot, String value) {
+            return new ParsedValue(snapshot, value != null ? Integer.parseInt(value) : defaultValue, null);
+        }
+
+        @Override
+        public int getAsInt() {
+            return (int) parsedValue().primitive;
+        }
+    }
+
+    public static final class LongProperty extends TypedProperty implements LongSupplier {
+
+        private final long defaultValue;
+
+        private LongProperty(Configuration configuration, String name, long defaultValue) {
+            super(configuration, name);
+            this.defaultValue = defaultValue;
+        }
+
+        @Override
+        ParsedValue parse(PropertySnapshot snapshot, String value) {
+            return new ParsedValue(snapshot, value != null ? Long.parseLong(value) : defaultValue, null);
+        }
+
+        @Override
+        public long getAsLong() {
+            return parsedValue().primitive;
+        }
+    }
+
+    public static final class BooleanProperty extends TypedProperty implements BooleanSupplier {
+
+        private final boolean defaultValue;
+
+        private BooleanProperty(Configuration configuration, String name, boolean defaultValue) {
+            super(configuration, name);
+            this.defaultValue = defaultValue;
+        }
+
+        @Override
+        ParsedValue parse(PropertySnapshot snapshot, String value) {
+            boolean parsed = value != null ? Boolean.parseBoolean(value) : defaultValue;
+            return new ParsedValue(snapshot, parsed ? 1 : 0, null);
+        }
+
+        @Override
+        public boolean getAsBoolean() {
+            return parsedValue().primitive != 0;
+        }
+    }
+
+    public static final class FileProperty extends TypedProperty implements Supplier<File> {
+
+        private final File defaultValue;
+
+        private FileProperty(Configuration configuration, String name, File defaultValue) {
+            super(configuration, name);
+            this.defaultValue = defaultValue;
+        }
+
+        @Override
+        ParsedValue parse(PropertySnapshot snapshot, String value) {
+            return new ParsedValue(snapshot, 0, value != null ? new File(value) : defaultValue);
+        }
+
+        @Override
+        public File get() {
+            return (File) parsedValue().object;
+        }
+    }
+
+    /**
+     * Live {@link Properties} view of a {@link Configuration}, see {@link #getUnderlyingPropertyObject()}. Its content
+     * is refreshed after each modification of the configuration and all its modifications, including the ones made
+     * through its key, entry and value collections, are written through to the configuration. It is serialized as a
+     * plain {@link Properties} copy
+     */
+    private static final class PropertiesView extends Properties {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Configuration configuration;
+        // the snapshot reflected by the content of this view
+        private transient PropertySnapshot snapshot = PropertySnapshot.EMPTY;
+
+        private PropertiesView(Configuration configuration) {
+            this.configuration = configuration;
+            refresh();
+        }
+
+        private synchronized void refresh() {
+            PropertySnapshot current = configuration.snapshot;
+            if (current != snapshot) {
+                for (String key : snapshot.diff(current)) {
+                    String value = current.get(key);
+                    if (value != null) {
+                        super.put(key, value);
+                    } else {
+                        super.remove(key);
+                    }
+                }
+                snapshot = current;
+            }
+        }
+
+        @Override
+        public synchronized Object put(Object key, Object value) {
+            Objects.requireNonNull(value);
+            Object previous = get(key);
+            // refreshes this view
+            configuration.putProperty((String) key, (String) value);
+            return previous;
+        }
+
+        @Override
+        public synchronized Object remove(Object key) {
+            Object previous = get(key);
+            if (previous != null) {
+                configuration.removeProperty((String) key);
+            }
+            return previous;
+        }
+
+        @Override
+        public synchronized boolean remove(Object key, Object value) {
+            if (value != null && value.equals(get(key))) {
+                remove(key);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public synchronized void putAll(Map<?, ?> t) {
+            t.forEach(this::put);
+        }
+
+        @Override
+        public synchronized void clear() {
+            keyList().forEach(this::remove);
+        }
+
+        @Override
+        public synchronized Object putIfAbsent(Object key, Object value) {
+            Object previous = get(key);
+            if (previous == null) {
+                put(key, value);
+            }
+            return previous;
+        }
+
+        @Override
+        public synchronized Object replace(Object key, Object value) {
+            return containsKey(key) ? put(key, value) : null;
+        }
+
+        @Override
+        public synchronized boolean replace(Object key, Object oldValue, Object newValue) {
+            if (oldValue != null && oldValue.equals(get(key))) {
+                put(key, newValue);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public synchronized void replaceAll(BiFunction<? super Object, ? super Object, ?> function) {
+            for (Object key : keyList()) {
+                put(key, function.apply(key, get(key)));
+            }
+        }
+
+        @Override
+        public synchronized Object computeIfAbsent(Object key, Function<? super Object, ?> mappingFunction) {
+            Object value = get(key);
+            if (value == null) {
+                value = mappingFunction.apply(key);
+                if (value != null) {
+                    put(key, value);
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public synchronized Object computeIfPresent(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+            Object value = get(key);
+            return value != null ? write(key, remappingFunction.apply(key, value)) : null;
+        }
+
+        @Override
+        public synchronized Object compute(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+            return write(key, remappingFunction.apply(key, get(key)));
+        }
+
+        @Override
+        public synchronized Object merge(Object key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+            Object previous = get(key);
+            return write(key, previous == null ? Objects.requireNonNull(value) : remappingFunction.apply(previous, value));
+        }
+
+        private Object write(Object key, Object value) {
+            if (value == null) {
+                remove(key);
+            } else {
+                put(key, value);
+            }
+            return value;
+        }
+
+        @Override
+        public Set<Object> keySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Object> iterator() {
+                    return new WriteThroughIterator<>() {
+                        @Override
+                        Object element(Object key) {
+                            return key;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return PropertiesView.this.size();
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return containsKey(o);
+                }
+
+                @Override
+                public boolean remove(Object o) {
+                    return PropertiesView.this.remove(o) != null;
+                }
+            };
+        }
+
+        @Override
+        public Set<Map.Entry<Object, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<Object, Object>> iterator() {
+                    return new WriteThroughIterator<>() {
+                        @Override
+                        Map.Entry<Object, Object> element(Object key) {
+                            return new AbstractMap.SimpleEntry<>(key, get(key)) {
+                                @Override
+                                public Object setValue(Object value) {
+                                    put(getKey(), value);
+                                    return super.setValue(value);
+                                }
+                            };
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return PropertiesView.this.size();
+                }
+            };
+        }
+
+        @Override
+        public Collection<Object> values() {
+            return new AbstractCollection<>() {
+                @Override
+                public Iterator<Object> iterator() {
+                    return new WriteThroughIterator<>() {
+                        @Override
+                        Object element(Object key) {
+                            return get(key);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return PropertiesView.this.size();
+                }
+            };
+        }
+
+        private synchronized List<Object> keyList() {
+            return new ArrayList<>(super.keySet());
+        }
+
+        /**
+         * Iterator over a copy of the keys, removing the properties from the configuration
+         */
+        private abstract class WriteThroughIterator<T> implements Iterator<T> {
+
+            private final Iterator<Object> keys = keyList().iterator();
+            private Object current;
+
+            @Override
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+
+            @Override
+            public T next() {
+                current = keys.next();
+                return element(current);
+            }
+
+            @Override
+            public void remove() {
+                if (current == null) {
+                    throw new IllegalStateException();
+                }
+                PropertiesView.this.remove(current);
+                current = null;
+            }
+
+            abstract T element(Object key);
+        }
+
+        @Override
+        public synchronized Object clone() {
+            Properties copy = new Properties();
+            keyList().forEach(key -> copy.put(key, get(key)));
+            return copy;
+        }
+
+        private Object writeReplace() {
+            return clone();
         }
     }
 
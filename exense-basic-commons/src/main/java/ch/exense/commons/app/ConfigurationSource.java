@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright 2021 exense GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package ch.exense.commons.app;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A layer of a {@link Configuration}. The layers of a {@link Configuration} are merged in order, the properties of a
+ * layer overriding the ones of the previous layers.
+ */
+public abstract class ConfigurationSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConfigurationSource.class);
+
+    /**
+     * @param file the property file
+     * @return a layer reading the provided property file and resolving its placeholders. The layer is watched if
+     * the property conf.scan of the {@link Configuration} is enabled
+     */
+    public static ConfigurationSource file(File file) {
+        return new FileSource(Objects.requireNonNull(file));
+    }
+
+    /**
+     * Returns a layer reading the provided property file through a precompiled binary snapshot. The snapshot is used
+     * as long as the content of the property file and the placeholders are unchanged, which skips the parsing and the
+     * resolution of the placeholders. Otherwise the property file is parsed and the snapshot is rebuilt. This is
+     * useful for property files loaded by many processes, like forked JVMs
+     *
+     * @param file         the property file
+     * @param snapshotFile the binary snapshot of the property file, created if it doesn't exist
+     * @return the layer
+     */
+    public static ConfigurationSource file(File file, File snapshotFile) {
+        return new PrecompiledFileSource(Objects.requireNonNull(file), Objects.requireNonNull(snapshotFile));
+    }
+
+    /**
+     * @return a layer exposing the system properties
+     */
+    public static ConfigurationSource systemProperties() {
+        return new SystemPropertiesSource();
+    }
+
+    /**
+     * @return a layer exposing the environment variables
+     */
+    public static ConfigurationSource environmentVariables() {
+        return new EnvironmentVariablesSource();
+    }
+
+    /**
+     * @param properties the properties of the layer. The map is read again on each load of the {@link Configuration}
+     * @return a layer exposing the provided properties
+     */
+    public static ConfigurationSource map(Map<String, String> properties) {
+        return new MapSource(Objects.requireNonNull(properties));
+    }
+
+    /**
+     * @return the file this layer is read from, which is watched for modifications if the property conf.scan is
+     * enabled, or null if this layer isn't read from a file
+     */
+    public File getFile() {
+        return null;
+    }
+
+    /**
+     * Reads the properties of this layer
+     *
+     * @param placeholders the values of the placeholders of the {@link Configuration}
+     * @return the properties of this layer
+     * @throws IOException if the properties can't be read
+     */
+    public abstract Map<String, String> load(Map<String, String> placeholders) throws IOException;
+
+    private static class FileSource extends ConfigurationSource {
+
+        private final File file;
+
+        private FileSource(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public File getFile() {
+            return file;
+        }
+
+        @Override
+        public Map<String, String> load(Map<String, String> placeholders) throws IOException {
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), Charset.defaultCharset())) {
+                return new PropertiesParser(placeholders).parse(reader);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "file:" + file;
+        }
+    }
+
+    private static class PrecompiledFileSource extends FileSource {
+
+        private final File snapshotFile;
+
+        private PrecompiledFileSource(File file, File snapshotFile) {
+            super(file);
+            this.snapshotFile = snapshotFile;
+        }
+
+        @Override
+        public Map<String, String> load(Map<String, String> placeholders) throws IOException {
+            byte[] content = Files.readAllBytes(getFile().toPath());
+            byte[] digest = PropertySnapshotFile.digest(content, placeholders);
+            Map<String, String> properties = PropertySnapshotFile.read(snapshotFile.toPath(), digest);
+            if (properties == null) {
+                logger.debug("Snapshot " + snapshotFile + " missing or stale, parsing " + getFile());
+                try (Reader reader = new InputStreamReader(new ByteArrayInputStream(content), Charset.defaultCharset())) {
+                    properties = new PropertiesParser(placeholders).parse(reader);
+                }
+                try {
+                    PropertySnapshotFile.write(snapshotFile.toPath(), digest, properties);
+                } catch (IOException e) {
+                    logger.warn("Unable to write the snapshot " + snapshotFile, e);
+                }
+            }
+            return properties;
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + " (snapshot:" + snapshotFile + ")";
+        }
+    }
+
+    private static class SystemPropertiesSource extends ConfigurationSource {
+
+        @Override
+        public Map<String, String> load(Map<String, String> placeholders) {
+            Map<String, String> properties = new LinkedHashMap<>();
+            System.getProperties().forEach((key, value) -> {
+                if (key instanceof String && value instanceof String) {
+                    properties.put((String) key, (String) value);
+                }
+            });
+            return properties;
+        }
+
+        @Override
+        public String toString() {
+            return "system properties";
+        }
+    }
+
+    private static class EnvironmentVariablesSource extends ConfigurationSource {
+
+        @Override
+        public Map<String, String> load(Map<String, String> placeholders) {
+            return System.getenv();
+        }
+
+        @Override
+        public String toString() {
+            return "environment variables";
+        }
+    }
+
+    private static class MapSource extends ConfigurationSource {
+
+        private final Map<String, String> properties;
+
+        private MapSource(Map<String, String> properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        public Map<String, String> load(Map<String, String> placeholders) {
+            return properties;
+        }
+
+        @Override
+        public String toString() {
+            return "map";
+        }
+    }
+}
@@ -0,0 +1,324 @@
+/*******************************************************************************
+ * Copyright 2021 exense GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package ch.exense.commons.app;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parser of property files resolving placeholders in a single pass.
+ *
+ * <p>The content is read as a stream of logical lines following the format of {@link java.util.Properties#load(Reader)}
+ * (comments, line continuations, escapes). The placeholders of the keys and values are resolved once the escapes
+ * have been processed, without any intermediate copy of the whole content. Comments are ignored, including the
+ * placeholders they contain.</p>
+ *
+ * <p>Placeholders have the form <code>${key}</code> or <code>${key:default}</code>. They can be nested, as in
+ * <code>${db.${env}.url}</code>, and the default value can itself contain placeholders. Keys are looked up in lower
+ * case in the placeholder map.</p>
+ */
+final class PropertiesParser {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Map<String, String> placeholders;
+
+    // state of the reader of logical lines
+    private Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int offset;
+    private int limit;
+    private char[] line = new char[256];
+
+    /**
+     * @param placeholders the values of the placeholders, with keys in lower case
+     */
+    PropertiesParser(Map<String, String> placeholders) {
+        this.placeholders = placeholders;
+    }
+
+    /**
+     * Parses the properties and resolves their placeholders
+     *
+     * @param reader the content to be parsed
+     * @return the properties, in the order of the content
+     * @throws IOException if the content can't be read
+     * @throws RuntimeException if a placeholder without default value is missing
+     */
+    Map<String, String> parse(Reader reader) throws IOException {
+        this.reader = reader;
+        this.offset = 0;
+        this.limit = 0;
+        Map<String, String> properties = new LinkedHashMap<>();
+        int length;
+        while ((length = readLogicalLine()) >= 0) {
+            parseLine(length, properties);
+        }
+        this.reader = null;
+        return properties;
+    }
+
+    private void parseLine(int length, Map<String, String> properties) {
+        char[] line = this.line;
+        int keyLength = 0;
+        int valueStart = length;
+        boolean hasSeparator = false;
+        boolean precedingBackslash = false;
+        while (keyLength < length) {
+            char c = line[keyLength];
+            if ((c == '=' || c == ':') && !precedingBackslash) {
+                valueStart = keyLength + 1;
+                hasSeparator = true;
+                break;
+            } else if ((c == ' ' || c == '\t' || c == '\f') && !precedingBackslash) {
+                valueStart = keyLength + 1;
+                break;
+            }
+            precedingBackslash = c == '\\' && !precedingBackslash;
+            keyLength++;
+        }
+        while (valueStart < length) {
+            char c = line[valueStart];
+            if (c != ' ' && c != '\t' && c != '\f') {
+                if (!hasSeparator && (c == '=' || c == ':')) {
+                    hasSeparator = true;
+                } else {
+                    break;
+                }
+            }
+            valueStart++;
+        }
+        String key = resolve(unescape(line, 0, keyLength));
+        String value = resolve(unescape(line, valueStart, length - valueStart));
+        properties.put(key, value);
+    }
+
+    /**
+     * Reads the next logical line into {@link #line}, skipping comments and blank lines, joining continuation lines
+     * and removing their leading whitespaces
+     *
+     * @return the length of the line or -1 at the end of the content
+     */
+    private int readLogicalLine() throws IOException {
+        int length = 0;
+        boolean skipWhiteSpace = true;
+        boolean isCommentLine = false;
+        boolean isNewLine = true;
+        boolean appendedLineBegin = false;
+        boolean precedingBackslash = false;
+        boolean skipLF = false;
+
+        while (true) {
+            if (offset >= limit) {
+                limit = reader.read(buffer);
+                offset = 0;
+                if (limit <= 0) {
+                    if (length == 0 || isCommentLine) {
+                        return -1;
+                    }
+                    return precedingBackslash ? length - 1 : length;
+                }
+            }
+            char c = buffer[offset++];
+            if (skipLF) {
+                skipLF = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            if (skipWhiteSpace) {
+                if (c == ' ' || c == '\t' || c == '\f') {
+                    continue;
+                }
+                if (!appendedLineBegin && (c == '\r' || c == '\n')) {
+                    continue;
+                }
+                skipWhiteSpace = false;
+                appendedLineBegin = false;
+            }
+            if (isNewLine) {
+                isNewLine = false;
+                if (c == '#' || c == '!') {
+                    isCommentLine = true;
+                    continue;
+                }
+            }
+            if (c != '\n' && c != '\r') {
+                if (!isCommentLine) {
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, length * 2);
+                    }
+                    line[length++] = c;
+                    precedingBackslash = c == '\\' && !precedingBackslash;
+                }
+            } else if (isCommentLine || length == 0) {
+                // end of a comment or blank line
+                isCommentLine = false;
+                isNewLine = true;
+                skipWhiteSpace = true;
+                length = 0;
+            } else if (precedingBackslash) {
+                // the line continues on the next one
+                length--;
+                skipWhiteSpace = true;
+                appendedLineBegin = true;
+                precedingBackslash = false;
+                skipLF = c == '\r';
+            } else {
+                // the '\n' following a '\r' is skipped as leading whitespace of the next line
+                return length;
+            }
+        }
+    }
+
+    private static String unescape(char[] chars, int offset, int length) {
+        int end = offset + length;
+        int firstBackslash = -1;
+        for (int i = offset; i < end; i++) {
+            if (chars[i] == '\\') {
+                firstBackslash = i;
+                break;
+            }
+        }
+        if (firstBackslash < 0) {
+            return new String(chars, offset, length);
+        }
+        StringBuilder result = new StringBuilder(length);
+        result.append(chars, offset, firstBackslash - offset);
+        int i = firstBackslash;
+        while (i < end) {
+            char c = chars[i++];
+            if (c == '\\' && i < end) {
+                c = chars[i++];
+                if (c == 'u') {
+                    if (i + 4 > end) {
+                        throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                    }
+                    int value = 0;
+                    for (int j = 0; j < 4; j++) {
+                        int digit = Character.digit(chars[i++], 16);
+                        if (digit < 0) {
+                            throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                        }
+                        value = (value << 4) | digit;
+                    }
+                    c = (char) value;
+                } else if (c == 't') {
+                    c = '\t';
+                } else if (c == 'r') {
+                    c = '\r';
+                } else if (c == 'n') {
+                    c = '\n';
+                } else if (c == 'f') {
+                    c = '\f';
+                }
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Resolves the placeholders of a text
+     *
+     * @param text the text
+     * @return the text with its placeholders replaced. Unterminated placeholders are kept as is
+     */
+    String resolve(String text) {
+        int start = text.indexOf("${");
+        if (start < 0) {
+            return text;
+        }
+        StringBuilder result = new StringBuilder(text.length() + 16);
+        int position = 0;
+        while (start >= 0) {
+            int end = findClosingBrace(text, start + 2);
+            if (end < 0) {
+                break;
+            }
+            result.append(text, position, start);
+            result.append(resolvePlaceholder(text, start + 2, end));
+            position = end + 1;
+            start = text.indexOf("${", position);
+        }
+        result.append(text, position, text.length());
+        return result.toString();
+    }
+
+    private String resolvePlaceholder(String text, int start, int end) {
+        if (start == end) {
+            // empty placeholders are kept as is
+            return "${}";
+        }
+        int separator = findDefaultSeparator(text, start, end);
+        String key = resolve(text.substring(start, separator < 0 ? end : separator));
+        if (placeholders == null) {
+            throw new RuntimeException("Unable to replace placeholders. Placeholder map is null. This should never occur.");
+        }
+        String value = placeholders.get(key.toLowerCase());
+        if (value != null) {
+            return value;
+        } else if (separator >= 0) {
+            // the default value is only resolved if used
+            return resolve(text.substring(separator + 1, end));
+        } else {
+            throw new RuntimeException("Missing placeholder '" + key + "'.");
+        }
+    }
+
+    /**
+     * @return the index of the brace closing the placeholder starting at the provided index, taking nested
+     * placeholders into account, or -1 if the placeholder isn't terminated
+     */
+    private static int findClosingBrace(String text, int from) {
+        int depth = 0;
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '$' && i + 1 < text.length() && text.charAt(i + 1) == '{') {
+                depth++;
+                i++;
+            } else if (c == '}') {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first ':' outside of nested placeholders or -1 if the placeholder has no default value
+     */
+    private static int findDefaultSeparator(String text, int start, int end) {
+        int depth = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '$' && i + 1 < end && text.charAt(i + 1) == '{') {
+                depth++;
+                i++;
+            } else if (c == '}') {
+                depth--;
+            } else if (c == ':' && depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright 2021 exense GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package ch.exense.commons.app;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable map of properties used by {@link Configuration} to serve lookups without locking.
+ *
+ * <p>Entries are stored in a flat open-addressed table with linear probing, kept at most half full, so that a lookup
+ * is a hash, an index computation and a few array reads without any allocation. Modifications create a new
+ * snapshot, which is published by the {@link Configuration} through a single volatile reference.</p>
+ */
+final class PropertySnapshot {
+
+    static final PropertySnapshot EMPTY = new PropertySnapshot(new String[2], new String[2], 0);
+
+    private final String[] keys;
+    private final String[] values;
+    private final int mask;
+    private final int size;
+
+    // lazily computed, see getNames()
+    private volatile Set<Object> names;
+
+    private PropertySnapshot(String[] keys, String[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.mask = keys.length - 1;
+        this.size = size;
+    }
+
+    /**
+     * @param properties the properties to be copied. The keys and values have to be strings
+     * @return a snapshot of the provided properties
+     */
+    static PropertySnapshot of(Properties properties) {
+        Map<String, String> map = new LinkedHashMap<>();
+        properties.forEach((key, value) -> map.put((String) key, (String) value));
+        return of(map);
+    }
+
+    /**
+     * @param map the entries to be copied
+     * @return a snapshot of the provided entries
+     */
+    static PropertySnapshot of(Map<String, String> map) {
+        if (map.isEmpty()) {
+            return EMPTY;
+        }
+        int capacity = tableSize(map.size());
+        String[] keys = new String[capacity];
+        String[] values = new String[capacity];
+        map.forEach((key, value) -> insert(keys, values, Objects.requireNonNull(key), Objects.requireNonNull(value)));
+        return new PropertySnapshot(keys, values, map.size());
+    }
+
+    private static int tableSize(int size) {
+        // power of two, at least twice the number of entries
+        return Math.max(2, Integer.highestOneBit(Math.max(1, size) * 2 - 1) << 1);
+    }
+
+    private static int indexFor(String key, int mask) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * @return true if the key was not present yet
+     */
+    private static boolean insert(String[] keys, String[] values, String key, String value) {
+        int mask = keys.length - 1;
+        int index = indexFor(key, mask);
+        String existing;
+        while ((existing = keys[index]) != null) {
+            if (existing.equals(key)) {
+                values[index] = value;
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        return true;
+    }
+
+    /**
+     * @param key the key
+     * @return the value of the key or null if absent
+     */
+    String get(String key) {
+        String[] keys = this.keys;
+        int index = indexFor(key, mask);
+        String existing;
+        while ((existing = keys[index]) != null) {
+            if (existing.equals(key)) {
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    boolean containsKey(String key) {
+        return get(key) != null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param key   the key
+     * @param value the new value of the key
+     * @return a new snapshot containing the entries of this snapshot and the provided one
+     */
+    PropertySnapshot with(String key, String value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        if (value.equals(get(key))) {
+            return this;
+        }
+        int capacity = tableSize(size + 1);
+        String[] newKeys;
+        String[] newValues;
+        if (capacity == keys.length) {
+            newKeys = keys.clone();
+            newValues = values.clone();
+        } else {
+            newKeys = new String[capacity];
+            newValues = new String[capacity];
+            forEach((k, v) -> insert(newKeys, newValues, k, v));
+        }
+        boolean added = insert(newKeys, newValues, key, value);
+        return new PropertySnapshot(newKeys, newValues, added ? size + 1 : size);
+    }
+
+    /**
+     * @param key the key to be removed
+     * @return a new snapshot containing the entries of this snapshot except the provided key
+     */
+    PropertySnapshot without(String key) {
+        if (!containsKey(key)) {
+            return this;
+        }
+        Map<String, String> map = toMap();
+        map.remove(key);
+        return of(map);
+    }
+
+    /**
+     * @param other the snapshot to compare with
+     * @return the unmodifiable set of keys that have been added, removed or modified in the other snapshot
+     */
+    Set<String> diff(PropertySnapshot other) {
+        if (other == this) {
+            return Collections.emptySet();
+        }
+        Set<String> changedKeys = new HashSet<>();
+        forEach((key, value) -> {
+            if (!value.equals(other.get(key))) {
+                changedKeys.add(key);
+            }
+        });
+        other.forEach((key, value) -> {
+            if (!containsKey(key)) {
+                changedKeys.add(key);
+            }
+        });
+        return Collections.unmodifiableSet(changedKeys);
+    }
+
+    void forEach(BiConsumer<String, String> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    Map<String, String> toMap() {
+        Map<String, String> map = new LinkedHashMap<>();
+        forEach(map::put);
+        return map;
+    }
+
+    /**
+     * @return the unmodifiable set of keys, computed once per snapshot
+     */
+    Set<Object> getNames() {
+        Set<Object> names = this.names;
+        if (names == null) {
+            Set<Object> set = new LinkedHashSet<>();
+            forEach((key, value) -> set.add(key));
+            names = Collections.unmodifiableSet(set);
+            this.names = names;
+        }
+        return names;
+    }
+}
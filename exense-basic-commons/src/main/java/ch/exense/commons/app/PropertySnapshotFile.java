@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright 2021 exense GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package ch.exense.commons.app;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Binary file containing the resolved properties of a property file, used to skip the parsing and the resolution of
+ * the placeholders in processes loading the same property file repeatedly.
+ *
+ * <p>Format: the magic number, the version of the format, the SHA-256 digest of the source (content of the property
+ * file, charset, placeholders and version of the resolution), the number of entries followed by the entries as
+ * length-prefixed UTF-8 keys and values. A snapshot whose digest doesn't match the source is stale and ignored.</p>
+ *
+ * <p>The property file is still read and hashed on each load to validate the snapshot: the snapshot saves the parsing
+ * and the resolution, not the I/O.</p>
+ */
+final class PropertySnapshotFile {
+
+    private static final int MAGIC = 0x45584346; // "EXCF"
+    private static final int VERSION = 1;
+    private static final int DIGEST_LENGTH = 32;
+    // version of the parsing and of the resolution of the placeholders, to be incremented whenever their semantics
+    // change so that the existing snapshots become stale
+    private static final int RESOLUTION_VERSION = 1;
+
+    private PropertySnapshotFile() {
+    }
+
+    /**
+     * @param content      the content of the property file
+     * @param placeholders the placeholders used to resolve the property file
+     * @return the digest identifying the resolved properties
+     */
+    static byte[] digest(byte[] content, Map<String, String> placeholders) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(ByteBuffer.allocate(4).putInt(RESOLUTION_VERSION).array());
+        digest.update(content);
+        // the content is decoded using the default charset
+        digest.update(Charset.defaultCharset().name().getBytes(StandardCharsets.UTF_8));
+        if (placeholders != null) {
+            // sorted to be independent of the implementation of the map
+            new TreeMap<>(placeholders).forEach((key, value) -> {
+                digest.update((byte) 0);
+                digest.update(key.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+            });
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Reads a snapshot file
+     *
+     * @param file           the snapshot file
+     * @param expectedDigest the digest of the source
+     * @return the properties or null if the snapshot doesn't exist, is stale or is corrupted
+     * @throws IOException if the snapshot can't be read
+     */
+    static Map<String, String> read(Path file, byte[] expectedDigest) throws IOException {
+        try {
+            // not mapped, as the strings are copied anyway and a mapping would prevent the replacement of the
+            // snapshot on Windows until garbage collected
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (buffer.remaining() < 8 + DIGEST_LENGTH || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            byte[] digest = new byte[DIGEST_LENGTH];
+            buffer.get(digest);
+            if (!Arrays.equals(digest, expectedDigest)) {
+                return null;
+            }
+            int count = buffer.getInt();
+            Map<String, String> properties = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                properties.put(readString(buffer), readString(buffer));
+            }
+            return buffer.hasRemaining() ? null : properties;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            // truncated or corrupted snapshot
+            return null;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a snapshot file atomically, so that concurrent readers never see a partial snapshot
+     *
+     * @param file       the snapshot file
+     * @param digest     the digest of the source
+     * @param properties the resolved properties
+     * @throws IOException if the snapshot can't be written
+     */
+    static void write(Path file, byte[] digest, Map<String, String> properties) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tempFile = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.write(digest);
+                out.writeInt(properties.size());
+                for (Map.Entry<String, String> entry : properties.entrySet()) {
+                    writeString(out, entry.getKey());
+                    writeString(out, entry.getValue());
+                }
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright 2021 exense GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package ch.exense.commons.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Source of native file system events for the {@link FileWatchService}, based on the JDK {@link WatchService}
+ * (inotify on Linux). Directories can be watched recursively, in which case the sub directories created after the
+ * registration are watched as well.
+ */
+class DirectoryWatcher implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryWatcher.class);
+
+    private final WatchService watchService;
+
+    private final Map<Path, Registration> registrations = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Registration> registrationsByKey = new ConcurrentHashMap<>();
+
+    private DirectoryWatcher(WatchService watchService) {
+        this.watchService = watchService;
+    }
+
+    /**
+     * @return a watcher based on the native events of the default file system or null if the file system doesn't
+     * support them. The JDK falls back to a polling implementation of the {@link WatchService} on some platforms,
+     * which is less reactive than the polling of the {@link FileWatchService} and is therefore not used
+     */
+    static DirectoryWatcher create() {
+        try {
+            WatchService watchService = FileSystems.getDefault().newWatchService();
+            if (watchService.getClass().getName().endsWith("PollingWatchService")) {
+                logger.debug("Native file system events not available on this platform");
+                watchService.close();
+                return null;
+            }
+            return new DirectoryWatcher(watchService);
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("Unable to create the watch service, falling back to polling", e);
+            return null;
+        }
+    }
+
+    /**
+     * Watches a directory. Native events aren't reported for the targets of symbolic links, trees containing symbolic
+     * links are therefore not watched
+     *
+     * @param directory the directory to be watched
+     * @param recursive if the sub directories should be watched as well
+     * @return true if the directory is watched, false if it couldn't be registered or contains symbolic links
+     */
+    synchronized boolean watch(Path directory, boolean recursive) {
+        List<Registration> newRegistrations = new ArrayList<>();
+        try {
+            if (recursive) {
+                boolean[] symbolicLinkFound = new boolean[1];
+                Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                        register(dir, true, newRegistrations);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isSymbolicLink()) {
+                            symbolicLinkFound[0] = true;
+                            return FileVisitResult.TERMINATE;
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+                if (symbolicLinkFound[0]) {
+                    logger.debug("Directory '{}' contains symbolic links and can't be watched natively", directory);
+                    newRegistrations.forEach(this::cancel);
+                    return false;
+                }
+            } else {
+                register(directory, false, newRegistrations);
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warn("Unable to watch directory '{}': {}", directory, e.getMessage());
+            // Don't keep a partial registration of the tree
+            newRegistrations.forEach(this::cancel);
+            return false;
+        }
+    }
+
+    // called with the lock of this watcher held, including by the watcher thread for the new sub directories
+    private void register(Path directory, boolean recursive, List<Registration> newRegistrations) throws IOException {
+        Registration registration = registrations.get(directory);
+        if (registration == null) {
+            WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            registration = new Registration(directory, key, recursive);
+            registrations.put(directory, registration);
+            registrationsByKey.put(key, registration);
+            newRegistrations.add(registration);
+        } else if (recursive) {
+            registration.recursive = true;
+        }
+    }
+
+    /**
+     * @param directory the directory
+     * @return true if native events are received for the directory
+     */
+    boolean isWatched(Path directory) {
+        return registrations.containsKey(directory);
+    }
+
+    /**
+     * Stops watching the directories matching the predicate
+     *
+     * @param unused predicate returning true for the directories that aren't needed anymore
+     */
+    synchronized void unwatch(Predicate<Path> unused) {
+        for (Registration registration : new ArrayList<>(registrations.values())) {
+            if (unused.test(registration.directory)) {
+                cancel(registration);
+            }
+        }
+    }
+
+    private synchronized void cancel(Registration registration) {
+        registration.key.cancel();
+        registrations.remove(registration.directory);
+        registrationsByKey.remove(registration.key);
+    }
+
+    /**
+     * Waits for file system events. Once a first event is received, the events are collected until no further event
+     * is received within the coalescing delay, or the timeout elapsed.
+     *
+     * @param timeoutMs    the maximum time to wait in ms
+     * @param coalescingMs the time to wait for further events once an event has been received
+     * @return the paths that have been created, deleted or modified. Empty if no event has been received
+     * @throws InterruptedException if interrupted while waiting
+     * @throws ClosedWatchServiceException if the watcher has been closed
+     */
+    Set<Path> poll(long timeoutMs, long coalescingMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        WatchKey key = watchService.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        if (key == null) {
+            return Collections.emptySet();
+        }
+        Set<Path> changedPaths = new HashSet<>();
+        do {
+            processEvents(key, changedPaths);
+            long remaining = deadline - System.currentTimeMillis();
+            key = remaining > 0 ? watchService.poll(Math.min(coalescingMs, remaining), TimeUnit.MILLISECONDS) : null;
+        } while (key != null);
+        return changedPaths;
+    }
+
+    private void processEvents(WatchKey key, Set<Path> changedPaths) {
+        Registration registration = registrationsByKey.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (registration == null) {
+                continue;
+            }
+            if (event.kind() == OVERFLOW) {
+                // Events have been lost, the whole directory has to be considered as changed
+                changedPaths.add(registration.directory);
+            } else {
+                Path path = registration.directory.resolve((Path) event.context());
+                changedPaths.add(path);
+                if (event.kind() == ENTRY_CREATE && registration.recursive && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    // the new directory might already have content, so it is considered as changed as a whole. If it
+                    // can't be watched, the FileWatchService falls back to polling, see isWatched()
+                    watch(path, true);
+                }
+            }
+        }
+        if (!key.reset() && registration != null) {
+            // the directory has been deleted or is not accessible anymore
+            changedPaths.add(registration.directory);
+            cancel(registration);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private static class Registration {
+
+        private final Path directory;
+        private final WatchKey key;
+        private volatile boolean recursive;
+
+        private Registration(Path directory, WatchKey key, boolean recursive) {
+            this.directory = directory;
+            this.key = key;
+            this.recursive = recursive;
+        }
+    }
+}
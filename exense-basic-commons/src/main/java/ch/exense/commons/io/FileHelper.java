@@ -25,11 +25,21 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -39,6 +49,13 @@ public class FileHelper {
 
     public static final int DEFAULT_BUFFER_SIZE = 2048;
 
+    /**
+     * The default maximum number of decoded bytes kept in memory by a streaming unzip
+     */
+    public static final long DEFAULT_UNZIP_MAX_IN_FLIGHT_BYTES = 64 * 1024 * 1024;
+
+    private static final int MAX_UNZIP_ENTRY_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
     /**
      * Creates a temporary file that will be deleted on JVM exit
      *
@@ -231,18 +248,120 @@ public class FileHelper {
 	}
 
 	/**
-	 * Extracts the zip file to the target folder provided as argument
+	 * Extracts the zip file to the target folder provided as argument, inflating the entries in parallel using
+	 * one worker per available processor
 	 * @param zipFile the zip file to be extracted
 	 * @param target the target folder to extract to
 	 * @param filter predicate on ZIP entry names that can be used to do a partial extraction
 	 * @throws IOException if an error occurs during file unzip
 	 */
 	public static void unzip(File zipFile, File target, Predicate<String> filter) throws IOException {
-		try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(zipFile), 64 * 1024)) {
-			unzip(in, target, filter);
-        }
-    }
+		unzip(zipFile, target, filter, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Extracts the zip file to the target folder provided as argument
+	 * <p>
+	 * The entries are listed from the central directory of the archive and inflated in parallel, each worker
+	 * writing its entries straight to their target path. If the source isn't a regular file (pipe, device...),
+	 * the archive is extracted sequentially as a stream.
+	 *
+	 * @param zipFile     the zip file to be extracted
+	 * @param target      the target folder to extract to
+	 * @param filter      predicate on ZIP entry names that can be used to do a partial extraction
+	 * @param parallelism the maximum number of entries inflated concurrently
+	 * @throws IOException if an error occurs during file unzip
+	 */
+	public static void unzip(File zipFile, File target, Predicate<String> filter, int parallelism) throws IOException {
+		Objects.requireNonNull(zipFile);
+		Objects.requireNonNull(target);
+		Objects.requireNonNull(filter);
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be greater than 0");
+		}
+
+		if (!zipFile.isFile()) {
+			try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(zipFile), 64 * 1024)) {
+				unzip(in, target, filter);
+			}
+			return;
+		}
+
+		final Path canonicalTarget = prepareUnzipTarget(target);
+
+		try (ZipFile zip = new ZipFile(zipFile)) {
+			// Validate all entries before writing anything. The last of the entries having the same name wins, it is
+			// the only one extracted so that the workers don't race on the same file
+			Map<Path, ZipEntry> entriesByPath = new LinkedHashMap<>();
+			Set<Path> dirs = new HashSet<>();
+			Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+			while (zipEntries.hasMoreElements()) {
+				ZipEntry entry = zipEntries.nextElement();
+				String name = entry.getName().replace("\\", "/");
+				Path destPath = resolveZipEntry(canonicalTarget, name);
+				if (!entry.isDirectory() && filter.test(name)) {
+					entriesByPath.put(destPath, entry);
+					Path parent = destPath.getParent();
+					if (parent != null) dirs.add(parent);
+				}
+			}
+			List<ZipEntry> entries = new ArrayList<>(entriesByPath.values());
+			List<Path> destPaths = new ArrayList<>(entriesByPath.keySet());
+
+			for (Path dir : dirs) {
+				Files.createDirectories(dir);
+			}
+
+			AtomicInteger nextEntry = new AtomicInteger();
+			AtomicBoolean failed = new AtomicBoolean();
+			int workers = Math.min(parallelism, entries.size());
+			if (workers <= 1) {
+				extractZipEntries(zip, entries, destPaths, nextEntry, failed);
+			} else {
+				Callable<Void> worker = () -> {
+					extractZipEntries(zip, entries, destPaths, nextEntry, failed);
+					return null;
+				};
+				ExecutorService executor = Executors.newFixedThreadPool(workers);
+				try {
+					for (Future<Void> result : executor.invokeAll(Collections.nCopies(workers, worker))) {
+						try {
+							result.get();
+						} catch (ExecutionException e) {
+							if (e.getCause() instanceof IOException) {
+								throw (IOException) e.getCause();
+							} else if (e.getCause() instanceof RuntimeException) {
+								throw (RuntimeException) e.getCause();
+							}
+							throw new IOException("Unexpected error while extracting " + zipFile, e.getCause());
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while extracting " + zipFile);
+				} finally {
+					executor.shutdownNow();
+				}
+			}
+		}
+	}
 
+	/**
+	 * Extracts the entries of the zip file one after the other, pulling the index of the next entry to be
+	 * extracted from the shared counter so that several workers can process the same list concurrently
+	 */
+	private static void extractZipEntries(ZipFile zip, List<ZipEntry> entries, List<Path> destPaths,
+										  AtomicInteger nextEntry, AtomicBoolean failed) throws IOException {
+		int i;
+		while (!failed.get() && (i = nextEntry.getAndIncrement()) < entries.size()) {
+			try (InputStream in = zip.getInputStream(entries.get(i))) {
+				writeZipEntry(in, destPaths.get(i), null, 0);
+			} catch (IOException | RuntimeException e) {
+				failed.set(true);
+				throw e;
+			}
+		}
+	}
 
     /**
      * Extracts the zip provided as byte array to the target folder provided as argument
@@ -268,83 +387,209 @@ public class FileHelper {
 
 	/**
 	 * Extracts the zip file to the target folder provided as argument and applying the provided filter to only extract matching entries
+	 * <p>
+	 * Entries are written to disk as they are decoded. At most {@link #DEFAULT_UNZIP_MAX_IN_FLIGHT_BYTES} of decoded data
+	 * are kept in memory while waiting to be written in parallel. See {@link #unzip(InputStream, File, Predicate, long)}
+	 * for the handling of invalid archives.
+	 *
 	 * @param stream the {@link InputStream} of the zip to be extracted
 	 * @param target the target folder to extract to
 	 * @param filter predicate on ZIP entry names that can be used to do a partial extraction
 	 * @throws IOException if an error occurs during file unzip
 	 */
 	public static void unzip(InputStream stream, File target, Predicate<String> filter) throws IOException {
+		unzip(stream, target, filter, DEFAULT_UNZIP_MAX_IN_FLIGHT_BYTES);
+	}
+
+	/**
+	 * Extracts the zip file to the target folder provided as argument and applying the provided filter to only extract matching entries
+	 * <p>
+	 * Entries are written to disk as they are decoded. Decoded entries are handed over to parallel writers as long as
+	 * the total size of the pending writes fits into the provided budget. Once the budget is exhausted, entries are
+	 * written directly by the calling thread, so that the memory used by the extraction never exceeds the budget
+	 * whatever the size of the archive.
+	 * <p>
+	 * As the entries are validated while the archive is read, an invalid entry (like an entry outside of the target
+	 * folder) may only be detected once previous entries have been written. If the extraction fails, the files and
+	 * folders it created are deleted. The existing files it overwrote aren't restored. When several entries have the
+	 * same name, the last one wins.
+	 *
+	 * @param stream           the {@link InputStream} of the zip to be extracted
+	 * @param target           the target folder to extract to
+	 * @param filter           predicate on ZIP entry names that can be used to do a partial extraction
+	 * @param maxInFlightBytes the maximum number of decoded bytes kept in memory while waiting to be written. 0 disables parallel writes
+	 * @throws IOException if an error occurs during file unzip
+	 */
+	public static void unzip(InputStream stream, File target, Predicate<String> filter, long maxInFlightBytes) throws IOException {
 		Objects.requireNonNull(stream);
 		Objects.requireNonNull(target);
 		Objects.requireNonNull(filter);
-		Map<String, byte[]> entries = new LinkedHashMap<>();
-
-		// Create target directory if absent
-		if (!target.exists()) {
-			Files.createDirectories(target.toPath());
-		} else if (!target.isDirectory()) {
-			throw new IOException("The target should be a directory");
+		if (maxInFlightBytes < 0) {
+			throw new IllegalArgumentException("maxInFlightBytes must not be negative");
 		}
 
+		final Path canonicalTarget = prepareUnzipTarget(target);
+
+		int budgetSize = (int) Math.min(maxInFlightBytes, Integer.MAX_VALUE);
+		Semaphore budget = new Semaphore(budgetSize);
+		AtomicReference<IOException> writeError = new AtomicReference<>();
+		Set<Path> createdDirectories = new HashSet<>();
+		Set<Path> extractedFiles = new HashSet<>();
+		// the files and folders created by the extraction, in creation order, deleted if the extraction fails
+		List<Path> createdPaths = new ArrayList<>();
+		boolean completed = false;
 		try (ZipInputStream zip = new ZipInputStream(stream)) {
+			ZipEntry entry;
+			while ((entry = zip.getNextEntry()) != null && writeError.get() == null) {
+				String name = entry.getName().replace("\\", "/");
+				Path destPath = resolveZipEntry(canonicalTarget, name);
+				if (!entry.isDirectory() && filter.test(name)) {
+					Path parent = destPath.getParent();
+					if (parent != null && createdDirectories.add(parent)) {
+						createDirectories(parent, createdPaths);
+					}
+					if (!extractedFiles.add(destPath)) {
+						// Duplicate entry: the last one wins once the previous ones have been written
+						budget.acquireUninterruptibly(budgetSize);
+						budget.release(budgetSize);
+					} else if (!Files.exists(destPath)) {
+						createdPaths.add(destPath);
+					}
+					extractZipEntry(zip, entry.getSize(), destPath, budget, writeError);
+				}
+				zip.closeEntry();
+			}
+			completed = true;
+		} finally {
+			// Wait for the pending writes: all permits are released once they're completed
+			budget.acquireUninterruptibly(budgetSize);
+			if (!completed || writeError.get() != null) {
+				deleteCreatedPaths(createdPaths);
+			}
+		}
+		IOException e = writeError.get();
+		if (e != null) {
+			throw e;
+		}
+	}
 
-            ZipEntry entry;
-			// Canonicalize target once outside the loop — resolves symlinks and relative segments
-			final Path canonicalTarget;
+	private static void createDirectories(Path directory, List<Path> createdPaths) throws IOException {
+		List<Path> missing = new ArrayList<>();
+		for (Path path = directory; path != null && !Files.isDirectory(path); path = path.getParent()) {
+			missing.add(path);
+		}
+		Files.createDirectories(directory);
+		for (int i = missing.size() - 1; i >= 0; i--) {
+			createdPaths.add(missing.get(i));
+		}
+	}
+
+	private static void deleteCreatedPaths(List<Path> createdPaths) {
+		// Reverse creation order, so that the folders are empty once they're deleted
+		for (int i = createdPaths.size() - 1; i >= 0; i--) {
+			Path path = createdPaths.get(i);
 			try {
-				canonicalTarget = target.toPath().toRealPath();
+				Files.deleteIfExists(path);
 			} catch (IOException e) {
-				throw new IOException("Could not canonicalize target directory: " + target, e);
+				logger.warn("Could not delete '{}' after the failure of the extraction. Reason: {}", path, e.getMessage());
 			}
+		}
+	}
 
-            while ((entry = zip.getNextEntry()) != null) {
-				String name = entry.getName().replace("\\", "/");
+	private static Path prepareUnzipTarget(File target) throws IOException {
+		// Create target directory if absent
+		if (!target.exists()) {
+			Files.createDirectories(target.toPath());
+		} else if (!target.isDirectory()) {
+			throw new IOException("The target should be a directory");
+		}
+		// Canonicalize target once — resolves symlinks and relative segments
+		try {
+			return target.toPath().toRealPath();
+		} catch (IOException e) {
+			throw new IOException("Could not canonicalize target directory: " + target, e);
+		}
+	}
 
-				// Reject absolute paths in ZIP entries (e.g. /etc/passwd)
-				if (Paths.get(name).isAbsolute()) {
-					throw new IOException("ZIP entry with absolute path is not allowed: " + name);
-				}
+	private static Path resolveZipEntry(Path canonicalTarget, String name) throws IOException {
+		// Reject absolute paths in ZIP entries (e.g. /etc/passwd)
+		if (Paths.get(name).isAbsolute()) {
+			throw new IOException("ZIP entry with absolute path is not allowed: " + name);
+		}
 
-				// normalize() resolves syntactic ".." segments, combined with canonicalTarget
-				// (which has symlinks resolved) this prevents all known path traversal variants
-				Path destPath = canonicalTarget.resolve(name).normalize();
-				if (!destPath.startsWith(canonicalTarget)) {
-					throw new IOException("ZIP entry outside of target directory: " + name);
-				}
-				if (!entry.isDirectory() && filter.test(name)) {
-					entries.put(name, zip.readAllBytes());
-				}
-				zip.closeEntry();
-			}
+		// normalize() resolves syntactic ".." segments, combined with canonicalTarget
+		// (which has symlinks resolved) this prevents all known path traversal variants
+		Path destPath = canonicalTarget.resolve(name).normalize();
+		if (!destPath.startsWith(canonicalTarget)) {
+			throw new IOException("ZIP entry outside of target directory: " + name);
 		}
+		return destPath;
+	}
 
-		// Pre-create all directories
-		Set<Path> dirs = new HashSet<>();
-		for (String name : entries.keySet()) {
-			Path parent = target.toPath().resolve(name).getParent();
-			if (parent != null) dirs.add(parent);
+	/**
+	 * Decodes the current entry of the zip stream in memory and hands it over to a parallel writer, reserving the
+	 * decoded bytes from the budget as they are read. If the budget is exhausted, what has been decoded so far is
+	 * written by the calling thread, followed by the remainder of the entry.
+	 */
+	private static void extractZipEntry(ZipInputStream zip, long size, Path destPath, Semaphore budget,
+										AtomicReference<IOException> writeError) throws IOException {
+		// One extra byte for known sizes so that the end of the entry is detected without growing the buffer
+		int reserved = (size >= 0 && size < MAX_UNZIP_ENTRY_BUFFER_SIZE) ? (int) size + 1 : DEFAULT_BUFFER_SIZE;
+		if (!budget.tryAcquire(reserved)) {
+			writeZipEntry(zip, destPath, null, 0);
+			return;
 		}
+		boolean submitted = false;
 		try {
-			dirs.stream()
-					.sorted(Comparator.comparingInt(Path::getNameCount))
-					.forEach(d -> {
-						try {
-							Files.createDirectories(d);
-						} catch (IOException e) {
-							throw new UncheckedIOException(e);
-						}
-					});
+			byte[] data = new byte[reserved];
+			int count = 0;
+			while (true) {
+				if (count == data.length) {
+					int growth = Math.min(data.length, MAX_UNZIP_ENTRY_BUFFER_SIZE - data.length);
+					if (growth <= 0 || !budget.tryAcquire(growth)) {
+						writeZipEntry(zip, destPath, data, count);
+						return;
+					}
+					reserved += growth;
+					data = Arrays.copyOf(data, reserved);
+				}
+				int read = zip.read(data, count, data.length - count);
+				if (read < 0) {
+					break;
+				}
+				count += read;
+			}
 
-			// Write files in parallel
-			entries.entrySet().parallelStream().forEach(e -> {
+			final byte[] content = data;
+			final int length = count;
+			final int permits = reserved;
+			ForkJoinPool.commonPool().execute(() -> {
 				try {
-					Files.write(target.toPath().resolve(e.getKey()).normalize(), e.getValue());
-				} catch (IOException ex) {
-					throw new UncheckedIOException(ex);
+					if (writeError.get() == null) {
+						try (OutputStream out = Files.newOutputStream(destPath)) {
+							out.write(content, 0, length);
+						}
+					}
+				} catch (IOException e) {
+					writeError.compareAndSet(null, e);
+				} finally {
+					budget.release(permits);
 				}
 			});
-		} catch (UncheckedIOException e) {
-			throw e.getCause();
+			submitted = true;
+		} finally {
+			if (!submitted) {
+				budget.release(reserved);
+			}
+		}
+	}
+
+	private static void writeZipEntry(InputStream zip, Path destPath, byte[] head, int headLength) throws IOException {
+		try (OutputStream out = Files.newOutputStream(destPath)) {
+			if (head != null) {
+				out.write(head, 0, headLength);
+			}
+			zip.transferTo(out);
 		}
 	}
 
@@ -433,6 +678,37 @@ public class FileHelper {
         zos.close();
     }
 
+    /**
+     * Create a zip file of the directory denoted by the {@link File} passed as argument, reading the files
+     * concurrently. The entries are written in the same order as by {@link #zip(File, File, Function)}
+     *
+     * @param directory   the directory to be zipped
+     * @param target      the path to the target zip file
+     * @param fileFilter  filter for files or directories in directory
+     * @param parallelism the number of files processed concurrently
+     * @throws IOException if an error occurs during file zip
+     */
+    public static void zip(File directory, File target, Function<File, Boolean> fileFilter, int parallelism) throws IOException {
+        try (FileOutputStream fileOutputStream = new FileOutputStream(target)) {
+            zip(directory, fileOutputStream, fileFilter, ZipOutputStream.STORED, parallelism);
+        }
+    }
+
+    /**
+     * Create a zip file of the directory denoted by the {@link File} passed as argument, compressing the files
+     * concurrently into independent buffers before writing them to the output stream in a deterministic order
+     *
+     * @param directory        the directory to be zipped
+     * @param out              the output stream of the target zip file
+     * @param fileFilter       filter for files or directories in directory
+     * @param compressionLevel the compression level (0-9 or {@link java.util.zip.Deflater#DEFAULT_COMPRESSION}), 0 storing the files uncompressed
+     * @param parallelism      the number of files compressed concurrently
+     * @throws IOException if an error occurs during file zip
+     */
+    public static void zip(File directory, OutputStream out, Function<File, Boolean> fileFilter, int compressionLevel, int parallelism) throws IOException {
+        new ParallelZipWriter(compressionLevel, parallelism).write(directory, out, fileFilter);
+    }
+
     /**
      * Create a zip file of the directory denoted by the {@link File} passed as argument
      *
@@ -470,7 +746,7 @@ public class FileHelper {
         }
     }
 
-    private static String createZipEntryName(File base, File file) {
+    static String createZipEntryName(File base, File file) {
         return file.getPath().substring(base.getPath().length() + 1).replaceAll("\\\\", "/");
     }
 
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright 2021 exense GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package ch.exense.commons.io;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Incremental index of the last modification dates of file trees.
+ *
+ * <p>This is a stateful alternative to {@link FileHelper#getLastModificationDateRecursive(File)} for trees that are
+ * checked repeatedly. The index keeps the structure of each tree in memory and only lists the content of a directory
+ * again when the modification date of this directory has changed, which is the case whenever an entry is created,
+ * deleted or renamed in it. Unchanged directories reuse the cached list of their children and files are checked
+ * with a single call to {@link File#lastModified()}.</p>
+ *
+ * <p>Note that modifying the content of a file doesn't change the modification date of its directory: the files
+ * of the tree are therefore still checked individually, only the listing of unchanged directories is avoided.</p>
+ */
+public class FileModificationIndex {
+
+    /**
+     * Listings performed within this interval after the last modification of a directory are not trusted, as further
+     * changes could happen without changing its modification date on file systems with a coarse timestamp granularity
+     */
+    private static final long RACY_INTERVAL_MS = 2000;
+
+    private final Map<File, Node> roots = new ConcurrentHashMap<>();
+
+    /**
+     * Computes the last modification date of a file or a folder recursively
+     *
+     * @param file the file
+     * @return the time that the file or any file of the folder was last modified
+     */
+    public long getLastModificationDateRecursive(File file) {
+        Node root = roots.computeIfAbsent(file, f -> new Node(f, false));
+        synchronized (root) {
+            // the type of the root can't be derived from the listing of its parent
+            root.setDirectory(file.isDirectory());
+            return root.refresh();
+        }
+    }
+
+    /**
+     * Removes the tree of the provided file from the index
+     *
+     * @param file the root of the tree to be removed
+     */
+    public void remove(File file) {
+        roots.remove(file);
+    }
+
+    private static final class Node {
+
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final File file;
+        private boolean directory;
+        // the state of the directory when its content was last listed
+        private long lastModified;
+        private long listingTime;
+        private Node[] children;
+
+        private Node(File file, boolean directory) {
+            this.file = file;
+            this.directory = directory;
+        }
+
+        private void setDirectory(boolean directory) {
+            if (this.directory != directory) {
+                this.directory = directory;
+                this.children = null;
+            }
+        }
+
+        private long refresh() {
+            long modified = file.lastModified();
+            if (!directory) {
+                return modified;
+            }
+            if (children == null || modified != lastModified || lastModified >= listingTime - RACY_INTERVAL_MS) {
+                list(modified);
+            }
+            long lastModificationDate = modified;
+            for (Node child : children) {
+                long lastChange = child.refresh();
+                if (lastChange > lastModificationDate) {
+                    lastModificationDate = lastChange;
+                }
+            }
+            return lastModificationDate;
+        }
+
+        private void list(long modified) {
+            listingTime = System.currentTimeMillis();
+            lastModified = modified;
+            File[] files = file.listFiles();
+            if (files == null) {
+                // the directory has been deleted or can't be read
+                children = NO_CHILDREN;
+                return;
+            }
+            Map<String, Node> previousChildren = new HashMap<>();
+            if (children != null) {
+                for (Node child : children) {
+                    previousChildren.put(child.file.getName(), child);
+                }
+            }
+            Node[] newChildren = new Node[files.length];
+            for (int i = 0; i < files.length; i++) {
+                boolean isDirectory = files[i].isDirectory();
+                Node child = previousChildren.get(files[i].getName());
+                if (child != null) {
+                    child.setDirectory(isDirectory);
+                } else {
+                    child = new Node(files[i], isDirectory);
+                }
+                newChildren[i] = child;
+            }
+            children = newChildren;
+        }
+    }
+}
@@ -20,21 +20,129 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Watches files and folders and calls the registered callbacks when they're modified.
+ *
+ * <p>By default, modifications are detected using the native events of the file system (inotify on Linux): folders
+ * are watched recursively and files are watched through their parent folder. Bursts of events are coalesced so that
+ * a burst of modifications is checked once. Files that can't be watched natively (missing parent folder, platform
+ * without native events, exhausted watch limits, symbolic links...) are polled every {@link #getInterval()} ms.</p>
+ *
+ * <p>Callbacks are dispatched to an executor (virtual threads by default) so that a slow callback doesn't delay the
+ * detection of further modifications. The callbacks of a subscription never overlap: modifications detected while
+ * its callback is running result in a single further call once it completes. Callbacks of different subscriptions
+ * run concurrently.</p>
+ *
+ * <p>Several subscriptions can be made for the same file using {@link #subscribe(File, Runnable, boolean)}: each
+ * distinct file is checked once per scan, whatever the number of its subscriptions, and stops being watched once its
+ * last subscription has been closed. {@link #getSharedInstance()} returns an instance shared within the JVM, which
+ * avoids a watcher thread per component.</p>
+ */
 public class FileWatchService extends Thread implements Closeable {
 
     private static final Logger logger = LoggerFactory.getLogger(FileWatchService.class);
 
-    private final ConcurrentHashMap<File, Subscription> subscriptions = new ConcurrentHashMap<>();
+    /**
+     * Once a native event has been received, further events are collected until none is received within this delay
+     */
+    private static final long EVENT_COALESCING_DELAY_MS = 50;
+
+    // keyed by the normalized absolute path, so that the different paths of a file share a single watched file
+    private final ConcurrentHashMap<Path, WatchedFile> watchedFiles = new ConcurrentHashMap<>();
+
+    private final FileModificationIndex modificationIndex = new FileModificationIndex();
+
+    // null if native events are disabled or not supported
+    private final DirectoryWatcher directoryWatcher;
+
+    // serializes the registrations, as the watched directories are shared between subscriptions
+    private final Object registrationLock = new Object();
+
+    private final Executor callbackExecutor;
+    // the default executor, owned and therefore shut down by this service
+    private final ExecutorService ownedCallbackExecutor;
+
+    private final AtomicInteger pendingCallbacks = new AtomicInteger();
+    private final LongAdder executedCallbacks = new LongAdder();
+    private final LongAdder failedCallbacks = new LongAdder();
+    private final LongAdder totalCallbackDurationNs = new LongAdder();
+    private final LongAccumulator maxCallbackDurationNs = new LongAccumulator(Long::max, 0);
+    private final LongAdder totalCallbackDelayNs = new LongAdder();
+    private final LongAccumulator maxCallbackDelayNs = new LongAccumulator(Long::max, 0);
+
+    private final boolean shared;
 
     private int interval = 1000;
 
+    private static class SharedInstanceHolder {
+        private static final FileWatchService INSTANCE = new FileWatchService(true, null, true);
+    }
+
+    /**
+     * @return the instance shared within the JVM. Closing it has no effect, the subscriptions made on it have to be
+     * closed individually instead
+     */
+    public static FileWatchService getSharedInstance() {
+        return SharedInstanceHolder.INSTANCE;
+    }
+
     public FileWatchService() {
-        super();
+        this(true);
+    }
+
+    /**
+     * @param nativeEvents true to rely on the native events of the file system when available, false to poll all
+     *                     registered files every {@link #getInterval()} ms
+     */
+    public FileWatchService(boolean nativeEvents) {
+        this(nativeEvents, null);
+    }
+
+    /**
+     * @param nativeEvents     true to rely on the native events of the file system when available, false to poll all
+     *                         registered files every {@link #getInterval()} ms
+     * @param callbackExecutor the executor used to run the callbacks or null to run them on virtual threads. A
+     *                         provided executor isn't shut down when this service is closed
+     */
+    public FileWatchService(boolean nativeEvents, Executor callbackExecutor) {
+        this(nativeEvents, callbackExecutor, false);
+    }
+
+    private FileWatchService(boolean nativeEvents, Executor callbackExecutor, boolean shared) {
+        super(shared ? "FileWatchService-shared" : "FileWatchService");
+
+        this.shared = shared;
+
+        directoryWatcher = nativeEvents ? DirectoryWatcher.create() : null;
+
+        if (callbackExecutor != null) {
+            this.callbackExecutor = callbackExecutor;
+            this.ownedCallbackExecutor = null;
+        } else {
+            this.ownedCallbackExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("FileWatchService-callback-", 0).factory());
+            this.callbackExecutor = ownedCallbackExecutor;
+        }
 
         setDaemon(true);
 
@@ -49,32 +157,105 @@ public class FileWatchService extends Thread implements Closeable {
         this.interval = interval;
     }
 
+    /**
+     * @return true if modifications are detected using the native events of the file system
+     */
+    public boolean isUsingNativeEvents() {
+        return directoryWatcher != null;
+    }
+
+    /**
+     * @return the number of callbacks that have been dispatched and are either waiting for execution or running
+     */
+    public int getPendingCallbackCount() {
+        return pendingCallbacks.get();
+    }
+
+    /**
+     * @return the number of callbacks that have been executed, including the failed ones
+     */
+    public long getExecutedCallbackCount() {
+        return executedCallbacks.sum();
+    }
+
+    /**
+     * @return the number of callbacks that have thrown an exception
+     */
+    public long getFailedCallbackCount() {
+        return failedCallbacks.sum();
+    }
+
+    /**
+     * @return the average execution time of the callbacks in ms
+     */
+    public double getAverageCallbackDurationMs() {
+        return average(totalCallbackDurationNs);
+    }
+
+    /**
+     * @return the longest execution time of a callback in ms
+     */
+    public double getMaxCallbackDurationMs() {
+        return maxCallbackDurationNs.get() / 1_000_000.0;
+    }
+
+    /**
+     * @return the average time in ms between the detection of a modification and the start of the callback
+     */
+    public double getAverageCallbackDelayMs() {
+        return average(totalCallbackDelayNs);
+    }
+
+    /**
+     * @return the longest time in ms between the detection of a modification and the start of a callback
+     */
+    public double getMaxCallbackDelayMs() {
+        return maxCallbackDelayNs.get() / 1_000_000.0;
+    }
+
+    private double average(LongAdder totalNs) {
+        long count = executedCallbacks.sum();
+        return count == 0 ? 0 : totalNs.sum() / 1_000_000.0 / count;
+    }
+
     @Override
     public void run() {
         super.run();
 
+        long lastPolling = 0;
+        long nextDeadline = Long.MAX_VALUE;
         while (running) {
+            Set<Path> changedPaths = Collections.emptySet();
             try {
-                Thread.sleep(interval);
+                // wake up for the next polling or the next end of a quiet period, whichever comes first
+                long wait = Math.max(1, Math.min(lastPolling + interval, nextDeadline) - System.currentTimeMillis());
+                if (directoryWatcher != null) {
+                    changedPaths = directoryWatcher.poll(wait, EVENT_COALESCING_DELAY_MS);
+                } else {
+                    Thread.sleep(wait);
+                }
             } catch (InterruptedException e) {
                 logger.error("Thread interrupted while sleeping", e);
+            } catch (ClosedWatchServiceException e) {
+                // the service has been closed
+                break;
             }
 
+            long now = System.currentTimeMillis();
+            boolean pollingDue = now - lastPolling >= interval;
+            if (pollingDue) {
+                lastPolling = now;
+            }
 
+            nextDeadline = Long.MAX_VALUE;
             try {
-                List<Entry<File, Subscription>> subscriptionsList;
-                // defensive copy in case a callback itself modifies subscriptions
-                subscriptionsList = new ArrayList<>(subscriptions.entrySet());
-                for (Entry<File, Subscription> entry : subscriptionsList) {
-                    long lastModificationDate = FileHelper.getLastModificationDateRecursive(entry.getKey());
-                    logger.trace("Checking for modifications: file={} lastModified={} lastKnownModified={} changed={}", entry.getKey(), lastModificationDate, entry.getValue().lastupdate, lastModificationDate > entry.getValue().lastupdate);
-                    if (lastModificationDate > entry.getValue().lastupdate) {
-                        logger.info("Reloading file: " + entry.getKey().getAbsolutePath());
-                        entry.getValue().lastupdate = lastModificationDate;
-                        try {
-                            entry.getValue().callback.run();
-                        } catch (Throwable e) {
-                            logger.error("An error occurred while calling callback for file " + entry.getKey(), e);
+                // defensive copy in case subscriptions are modified concurrently
+                List<WatchedFile> watchedFilesList = new ArrayList<>(watchedFiles.values());
+                for (WatchedFile watchedFile : watchedFilesList) {
+                    check(watchedFile, changedPaths, pollingDue, now);
+                    for (Subscription subscription : watchedFile.subscriptions) {
+                        if (subscription.isChangePending()) {
+                            nextDeadline = Math.min(nextDeadline, subscription.getDeadline());
                         }
                     }
                 }
@@ -84,16 +265,239 @@ public class FileWatchService extends Thread implements Closeable {
         }
     }
 
+    private void check(WatchedFile watchedFile, Set<Path> changedPaths, boolean pollingDue, long now) {
+        boolean checkRequired = false;
+        for (Subscription subscription : watchedFile.subscriptions) {
+            if (subscription.checkRequired) {
+                subscription.checkRequired = false;
+                checkRequired = true;
+            } else if (subscription.isChangePending() && now >= subscription.getDeadline()) {
+                checkRequired = true;
+            }
+        }
+        if (watchedFile.watchedNatively && watchedFile.isAffectedBy(changedPaths) && !isWatchableNatively(watchedFile, changedPaths)) {
+            logger.debug("File {} can't be watched natively anymore, it will be polled", watchedFile.path);
+            watchedFile.watchedNatively = false;
+            checkRequired = true;
+            synchronized (registrationLock) {
+                releaseDirectories();
+            }
+        }
+        if (!checkRequired && (watchedFile.watchedNatively ? !watchedFile.isAffectedBy(changedPaths) : !pollingDue)) {
+            return;
+        }
+        File file = watchedFile.file;
+        // a single check of the file for all its subscriptions
+        long lastModificationDate = modificationIndex.getLastModificationDateRecursive(file);
+        for (Subscription subscription : watchedFile.subscriptions) {
+            logger.trace("Checking for modifications: file={} lastModified={} lastKnownModified={} changed={}", file, lastModificationDate, subscription.lastupdate, lastModificationDate > subscription.lastupdate);
+            if (lastModificationDate > subscription.lastupdate) {
+                subscription.lastupdate = lastModificationDate;
+                if (subscription.firstChange == 0) {
+                    subscription.firstChange = now;
+                }
+                subscription.lastChange = now;
+            }
+            if (subscription.isChangePending() && now >= subscription.getDeadline()) {
+                logger.info("Reloading file: " + file.getAbsolutePath());
+                subscription.firstChange = 0;
+                dispatch(file, subscription);
+            }
+        }
+    }
+
+    private void dispatch(File file, Subscription subscription) {
+        if (!subscription.requestCallback()) {
+            // the callback is already scheduled or running and will be called again once completed
+            return;
+        }
+        pendingCallbacks.incrementAndGet();
+        long dispatchTime = System.nanoTime();
+        try {
+            callbackExecutor.execute(() -> runCallbacks(file, subscription, dispatchTime));
+        } catch (RejectedExecutionException e) {
+            pendingCallbacks.decrementAndGet();
+            subscription.callbackState.set(Subscription.IDLE);
+            if (running) {
+                logger.error("Unable to dispatch the callback for file " + file, e);
+            }
+        }
+    }
+
+    private void runCallbacks(File file, Subscription subscription, long dispatchTime) {
+        try {
+            long requestTime = dispatchTime;
+            do {
+                long start = System.nanoTime();
+                recordDuration(start - requestTime, totalCallbackDelayNs, maxCallbackDelayNs);
+                try {
+                    subscription.callback.run();
+                } catch (Throwable e) {
+                    failedCallbacks.increment();
+                    logger.error("An error occurred while calling callback for file " + file, e);
+                }
+                long end = System.nanoTime();
+                recordDuration(end - start, totalCallbackDurationNs, maxCallbackDurationNs);
+                executedCallbacks.increment();
+                // further calls have been requested while the callback was running
+                requestTime = end;
+            } while (subscription.completeCallback());
+        } finally {
+            pendingCallbacks.decrementAndGet();
+        }
+    }
+
+    private static void recordDuration(long durationNs, LongAdder total, LongAccumulator max) {
+        total.add(durationNs);
+        max.accumulate(durationNs);
+    }
+
     private static class Subscription {
 
+        private static final int IDLE = 0;
+        private static final int RUNNING = 1;
+        private static final int RUNNING_WITH_RERUN = 2;
+
+        // serializes the calls of the callback, see requestCallback() and completeCallback()
+        final AtomicInteger callbackState = new AtomicInteger(IDLE);
+
         long lastupdate;
 
         Runnable callback;
 
-        public Subscription(long lastupdate, Runnable callback) {
+        // the quiet period and maximum delay of the debouncing, see register(File, Runnable, boolean, long, long)
+        final long quietPeriodMs;
+        final long maxDelayMs;
+        // the time of the first and last modification detected since the last dispatch of the callback, 0 if none
+        long firstChange;
+        long lastChange;
+
+        // true until the subscription has been checked once, to catch modifications that occurred before the watch
+        // was effective and to honor callOnRegistration
+        volatile boolean checkRequired = true;
+
+        public Subscription(long lastupdate, Runnable callback, long quietPeriodMs, long maxDelayMs) {
             super();
             this.lastupdate = lastupdate;
             this.callback = callback;
+            this.quietPeriodMs = quietPeriodMs;
+            this.maxDelayMs = maxDelayMs;
+        }
+
+        boolean isChangePending() {
+            return firstChange != 0;
+        }
+
+        /**
+         * @return the time at which the callback has to be called for the pending modifications
+         */
+        long getDeadline() {
+            long deadline = lastChange + quietPeriodMs;
+            return maxDelayMs > 0 ? Math.min(deadline, firstChange + maxDelayMs) : deadline;
+        }
+
+        /**
+         * @return true if the callback has to be dispatched, false if it is already running, in which case it will be
+         * called once more after completion
+         */
+        boolean requestCallback() {
+            while (true) {
+                int state = callbackState.get();
+                if (state == IDLE) {
+                    if (callbackState.compareAndSet(IDLE, RUNNING)) {
+                        return true;
+                    }
+                } else if (state == RUNNING_WITH_RERUN || callbackState.compareAndSet(RUNNING, RUNNING_WITH_RERUN)) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * @return true if the callback has to be called once more
+         */
+        boolean completeCallback() {
+            if (callbackState.compareAndSet(RUNNING, IDLE)) {
+                return false;
+            }
+            callbackState.set(RUNNING);
+            return true;
+        }
+
+    }
+
+    /**
+     * A watched file or folder and its subscriptions
+     */
+    private static class WatchedFile {
+
+        final File file;
+
+        // the absolute path of the watched file
+        final Path path;
+
+        // the folder watched for native events and whether it is watched recursively
+        Path watchedDirectory;
+        boolean recursive;
+        boolean watchedNatively;
+
+        final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+        // the subscription made using register(), replaced by further calls of register() for the same file
+        Subscription registeredSubscription;
+
+        WatchedFile(File file) {
+            this.file = file;
+            this.path = key(file);
+        }
+
+        boolean isAffectedBy(Collection<Path> changedPaths) {
+            for (Path changedPath : changedPaths) {
+                // changes within the watched tree, or of one of its parents (overflow, deletion)
+                if (changedPath.startsWith(path) || path.startsWith(changedPath)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean needsDirectory(Path directory) {
+            return watchedNatively && (recursive ? directory.startsWith(watchedDirectory) : directory.equals(watchedDirectory));
+        }
+    }
+
+    /**
+     * A subscription made using {@link #subscribe(File, Runnable, boolean)}. Closing it stops the notifications
+     */
+    public final class Registration implements Closeable {
+
+        private final File file;
+        private final Subscription subscription;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Registration(File file, Subscription subscription) {
+            this.file = file;
+            this.subscription = subscription;
+        }
+
+        /**
+         * @return the subscribed file
+         */
+        public File getFile() {
+            return file;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                logger.debug("Closing subscription for file " + file);
+                synchronized (registrationLock) {
+                    WatchedFile watchedFile = watchedFiles.get(key(file));
+                    if (watchedFile != null) {
+                        removeSubscription(watchedFile, subscription);
+                    }
+                }
+            }
         }
     }
 
@@ -102,22 +506,210 @@ public class FileWatchService extends Thread implements Closeable {
     }
 
     public void register(File file, Runnable callback, boolean callOnRegistration) {
+        register(file, callback, callOnRegistration, 0, 0);
+    }
+
+    /**
+     * Registers a file or folder with a debouncing of its modifications: the callback is called once no further
+     * modification has been detected during the quiet period, so that a burst of modifications (like the rewriting of
+     * a whole folder) results in a single call. Modifications are detected at the resolution of the native events or
+     * of the polling interval, the quiet period should therefore be longer than {@link #getInterval()} for polled files.
+     *
+     * @param file               the file or folder to be watched
+     * @param callback           the callback to be called upon modification
+     * @param callOnRegistration true if the callback should be called once after the registration
+     * @param quietPeriodMs      the time in ms without modification after which the callback is called, 0 to call it
+     *                           as soon as a modification is detected
+     * @param maxDelayMs         the maximum time in ms between the first detected modification and the call of the
+     *                           callback when modifications keep occurring, 0 for no maximum
+     */
+    public void register(File file, Runnable callback, boolean callOnRegistration, long quietPeriodMs, long maxDelayMs) {
         logger.debug("Registering file " + file);
-        subscriptions.put(file, new Subscription(callOnRegistration ? 0 : FileHelper.getLastModificationDateRecursive(file), callback));
+        synchronized (registrationLock) {
+            Subscription subscription = createSubscription(file, callback, callOnRegistration, quietPeriodMs, maxDelayMs);
+            WatchedFile watchedFile = watchedFiles.get(key(file));
+            Subscription previous = watchedFile.registeredSubscription;
+            watchedFile.registeredSubscription = subscription;
+            watchedFile.subscriptions.add(subscription);
+            if (previous != null) {
+                removeSubscription(watchedFile, previous);
+            }
+        }
+    }
+
+    /**
+     * Subscribes to the modifications of a file or folder. Unlike {@link #register(File, Runnable, boolean)},
+     * several subscriptions can be made for the same file, each of them being closed individually
+     *
+     * @param file               the file or folder to be watched
+     * @param callback           the callback to be called upon modification
+     * @param callOnRegistration true if the callback should be called once after the subscription
+     * @return the subscription, to be closed once the notifications aren't needed anymore
+     */
+    public Registration subscribe(File file, Runnable callback, boolean callOnRegistration) {
+        return subscribe(file, callback, callOnRegistration, 0, 0);
+    }
+
+    /**
+     * Subscribes to the modifications of a file or folder with a debouncing of its modifications, see
+     * {@link #register(File, Runnable, boolean, long, long)}
+     *
+     * @param file               the file or folder to be watched
+     * @param callback           the callback to be called upon modification
+     * @param callOnRegistration true if the callback should be called once after the subscription
+     * @param quietPeriodMs      the time in ms without modification after which the callback is called, 0 to call it
+     *                           as soon as a modification is detected
+     * @param maxDelayMs         the maximum time in ms between the first detected modification and the call of the
+     *                           callback when modifications keep occurring, 0 for no maximum
+     * @return the subscription, to be closed once the notifications aren't needed anymore
+     */
+    public Registration subscribe(File file, Runnable callback, boolean callOnRegistration, long quietPeriodMs, long maxDelayMs) {
+        logger.debug("Subscribing to file " + file);
+        synchronized (registrationLock) {
+            Subscription subscription = createSubscription(file, callback, callOnRegistration, quietPeriodMs, maxDelayMs);
+            watchedFiles.get(key(file)).subscriptions.add(subscription);
+            return new Registration(file, subscription);
+        }
+    }
+
+    private Subscription createSubscription(File file, Runnable callback, boolean callOnRegistration, long quietPeriodMs, long maxDelayMs) {
+        if (quietPeriodMs < 0 || maxDelayMs < 0) {
+            throw new IllegalArgumentException("The quiet period and the maximum delay must be positive");
+        }
+        WatchedFile watchedFile = watchedFiles.get(key(file));
+        if (watchedFile == null) {
+            watchedFile = new WatchedFile(file);
+            // start watching before computing the last modification date, so that no modification gets lost
+            watchNatively(watchedFile);
+            watchedFiles.put(watchedFile.path, watchedFile);
+        }
+        Subscription subscription = new Subscription(0, callback, quietPeriodMs, maxDelayMs);
+        subscription.lastupdate = callOnRegistration ? 0 : modificationIndex.getLastModificationDateRecursive(watchedFile.file);
+        return subscription;
+    }
+
+    private void removeSubscription(WatchedFile watchedFile, Subscription subscription) {
+        watchedFile.subscriptions.remove(subscription);
+        if (watchedFile.registeredSubscription == subscription) {
+            watchedFile.registeredSubscription = null;
+        }
+        if (watchedFile.subscriptions.isEmpty()) {
+            // last subscription of the file
+            watchedFiles.remove(watchedFile.path);
+            modificationIndex.remove(watchedFile.file);
+            releaseDirectories();
+        }
     }
 
+    private void watchNatively(WatchedFile watchedFile) {
+        if (directoryWatcher != null) {
+            Path path = watchedFile.path;
+            if (path.toFile().isDirectory()) {
+                watchedFile.watchedDirectory = path;
+                watchedFile.recursive = true;
+            } else {
+                watchedFile.watchedDirectory = path.getParent();
+                watchedFile.recursive = false;
+            }
+            // native events aren't reported for the targets of symbolic links, linked files are therefore polled
+            watchedFile.watchedNatively = watchedFile.watchedDirectory != null && watchedFile.watchedDirectory.toFile().isDirectory()
+                    && !isLinked(path) && directoryWatcher.watch(watchedFile.watchedDirectory, watchedFile.recursive);
+            if (!watchedFile.watchedNatively) {
+                logger.debug("File {} can't be watched natively, it will be polled", path);
+            }
+        }
+    }
+
+    /**
+     * Native events aren't reported for the targets of symbolic links: a symbolic link created within the watched tree
+     * (like the swap of the "..data" link of a Kubernetes ConfigMap) or a new sub folder that couldn't be watched
+     * requires polling. The same applies once the watched folder has been deleted, its registration being cancelled:
+     * no event would be reported for the folder recreated in its place
+     */
+    private boolean isWatchableNatively(WatchedFile watchedFile, Collection<Path> changedPaths) {
+        if (!directoryWatcher.isWatched(watchedFile.watchedDirectory)) {
+            return false;
+        }
+        for (Path changedPath : changedPaths) {
+            if (changedPath.startsWith(watchedFile.path)) {
+                if (Files.isSymbolicLink(changedPath)) {
+                    return false;
+                }
+                if (watchedFile.recursive && Files.isDirectory(changedPath, LinkOption.NOFOLLOW_LINKS) && !directoryWatcher.isWatched(changedPath)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the path is a symbolic link or one of its parents is. The file doesn't need to exist
+     */
+    private static boolean isLinked(Path path) {
+        for (Path current = path; current != null; current = current.getParent()) {
+            try {
+                return !current.toRealPath().equals(current);
+            } catch (IOException e) {
+                // the file doesn't exist, checking its parent
+                if (Files.isSymbolicLink(current)) {
+                    // dangling link
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Path key(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    private void releaseDirectories() {
+        if (directoryWatcher != null) {
+            Collection<WatchedFile> remaining = watchedFiles.values();
+            directoryWatcher.unwatch(directory -> remaining.stream().noneMatch(f -> f.needsDirectory(directory)));
+        }
+    }
+
+    /**
+     * Removes the registration made using {@link #register(File, Runnable, boolean)} for this file. The
+     * subscriptions made using {@link #subscribe(File, Runnable, boolean)} aren't affected
+     *
+     * @param file the registered file
+     */
     public void unregister(File file) {
         logger.debug("Unregistering file " + file);
-        subscriptions.remove(file);
+        synchronized (registrationLock) {
+            WatchedFile watchedFile = watchedFiles.get(key(file));
+            if (watchedFile != null && watchedFile.registeredSubscription != null) {
+                removeSubscription(watchedFile, watchedFile.registeredSubscription);
+            }
+        }
     }
 
     private volatile boolean running = true;
 
     @Override
     public synchronized void close() {
+        if (shared) {
+            logger.debug("Ignoring the closing of the shared instance");
+            return;
+        }
         if (running) {
             logger.info("Closing and terminating");
             running = false;
+            if (directoryWatcher != null) {
+                try {
+                    directoryWatcher.close();
+                } catch (IOException e) {
+                    logger.error("Error while closing the watch service", e);
+                }
+            }
+            if (ownedCallbackExecutor != null) {
+                // running callbacks are completed but not awaited
+                ownedCallbackExecutor.shutdown();
+            }
         }
     }
 }
@@ -0,0 +1,436 @@
+/*******************************************************************************
+ * Copyright 2021 exense GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package ch.exense.commons.io;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a ZIP archive of a directory, reading and compressing the files concurrently.
+ *
+ * <p>Each file is read once and compressed independently into its own buffer, or into a temporary spill file once its compressed
+ * size exceeds {@link #SPILL_THRESHOLD}. The compressed entries are then written to the output in the traversal
+ * order of the directory, so that the resulting archive doesn't depend on the completion order of the workers.
+ * The number of entries compressed ahead of the writer is bounded, which bounds the memory used by the buffers.</p>
+ *
+ * <p>The archive is written without ZIP64 extensions. Trees that would require them (more than 65535 entries or
+ * more than 4 GB) are written sequentially through a {@link ZipOutputStream} instead.</p>
+ */
+class ParallelZipWriter {
+
+    static final int SPILL_THRESHOLD = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long ZIP32_MAX_SIZE = 0xFFFFFFFFL;
+    private static final int ZIP32_MAX_ENTRIES = 0xFFFF;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    // Entry names are encoded in UTF-8
+    private static final int FLAG_UTF8 = 0x0800;
+
+    private final int level;
+    private final int parallelism;
+
+    /**
+     * @param level       the compression level (0-9, or {@link Deflater#DEFAULT_COMPRESSION}). Level 0 stores the files
+     *                    without compression
+     * @param parallelism the number of files read and compressed concurrently
+     */
+    ParallelZipWriter(int level, int parallelism) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be greater than 0");
+        }
+        this.level = level;
+        this.parallelism = parallelism;
+    }
+
+    void write(File directory, OutputStream out, Function<File, Boolean> fileFilter) throws IOException {
+        List<Item> items = new ArrayList<>();
+        collect(directory, directory, fileFilter, items);
+
+        if (requiresZip64(items)) {
+            writeSequentially(items, out);
+        } else {
+            writeInParallel(items, out);
+        }
+    }
+
+    private static void collect(File directory, File base, Function<File, Boolean> fileFilter, List<Item> items) {
+        for (File file : Objects.requireNonNull(directory.listFiles())) {
+            if (fileFilter == null || Boolean.TRUE.equals(fileFilter.apply(file))) {
+                String name = FileHelper.createZipEntryName(base, file);
+                if (file.isDirectory()) {
+                    items.add(new Item(file, name + "/", true));
+                    collect(file, base, fileFilter, items);
+                } else {
+                    items.add(new Item(file, name, false));
+                }
+            }
+        }
+    }
+
+    private static boolean requiresZip64(List<Item> items) {
+        if (items.size() > ZIP32_MAX_ENTRIES) {
+            return true;
+        }
+        // Upper bound of the archive size, accounting for headers and for the worst case expansion of deflate
+        long estimatedSize = 0;
+        for (Item item : items) {
+            long size = item.directory ? 0 : item.file.length();
+            estimatedSize += size + (size >> 10) + 1024 + 2L * item.name.length() * 3;
+            if (estimatedSize > ZIP32_MAX_SIZE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeSequentially(List<Item> items, OutputStream out) throws IOException {
+        ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        zos.setLevel(level);
+        for (Item item : items) {
+            ZipEntry entry = new ZipEntry(item.name);
+            entry.setTime(item.file.lastModified());
+            zos.putNextEntry(entry);
+            if (!item.directory) {
+                try (InputStream in = new FileInputStream(item.file)) {
+                    in.transferTo(zos);
+                }
+            }
+            zos.closeEntry();
+        }
+        zos.finish();
+        zos.flush();
+    }
+
+    private void writeInParallel(List<Item> items, OutputStream out) throws IOException {
+        // Bounds the number of entries compressed ahead of the writer
+        int window = parallelism * 2;
+        List<Future<CompressedEntry>> results = new ArrayList<>(items.size());
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            ArchiveOutput archive = new ArchiveOutput(out);
+            for (int i = 0; i < items.size(); i++) {
+                while (results.size() < items.size() && results.size() - i < window) {
+                    Item item = items.get(results.size());
+                    results.add(executor.submit(() -> compressUnlessInterrupted(item)));
+                }
+                CompressedEntry entry = await(results.get(i), items.get(i));
+                try {
+                    archive.writeEntry(items.get(i), entry);
+                } finally {
+                    entry.delete();
+                }
+            }
+            archive.finish();
+        } finally {
+            executor.shutdownNow();
+            // Release the entries that have been compressed ahead of a failure, once the workers are done. The
+            // workers still running if this wait is interrupted release their own entries
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    // the workers are bounded by the size of the files being read
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Future<CompressedEntry> result : results) {
+                if (result.isDone() && !result.isCancelled()) {
+                    try {
+                        result.get().delete();
+                    } catch (Exception ignored) {
+                    }
+                }
+            }
+        }
+    }
+
+    private static CompressedEntry await(Future<CompressedEntry> result, Item item) throws IOException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to compress " + item.file, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing " + item.file);
+        }
+    }
+
+    /**
+     * Compresses the item and releases the entry if the writer has been stopped in the meantime, as nobody would
+     * release it otherwise
+     */
+    private CompressedEntry compressUnlessInterrupted(Item item) throws IOException {
+        CompressedEntry entry = compress(item);
+        if (Thread.currentThread().isInterrupted()) {
+            entry.delete();
+            throw new InterruptedIOException("Interrupted while compressing " + item.file);
+        }
+        return entry;
+    }
+
+    private CompressedEntry compress(Item item) throws IOException {
+        CompressedEntry entry = new CompressedEntry(item.file.lastModified());
+        if (item.directory) {
+            entry.method = ZipEntry.STORED;
+            return entry;
+        }
+
+        // Stored entries are buffered like the deflated ones, so that the file is read once, along with its CRC
+        entry.method = level == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED;
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        SpillingOutputStream compressed = new SpillingOutputStream();
+        Deflater deflater = level == 0 ? null : new Deflater(level, true);
+        try (InputStream in = new FileInputStream(item.file);
+             OutputStream entryOut = deflater == null ? compressed
+                     : new DeflaterOutputStream(compressed, deflater, BUFFER_SIZE)) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                crc.update(buffer, 0, read);
+                entryOut.write(buffer, 0, read);
+                entry.size += read;
+            }
+        } catch (IOException | RuntimeException e) {
+            compressed.delete();
+            throw e;
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        entry.compressedSize = compressed.count;
+        entry.data = compressed.buffer;
+        entry.spillFile = compressed.spillFile;
+        entry.crc = crc.getValue();
+        return entry;
+    }
+
+    private static final class Item {
+
+        private final File file;
+        private final String name;
+        private final boolean directory;
+
+        private Item(File file, String name, boolean directory) {
+            this.file = file;
+            this.name = name;
+            this.directory = directory;
+        }
+    }
+
+    private static final class CompressedEntry {
+
+        private final long lastModified;
+        private int method;
+        private long crc;
+        private long size;
+        private long compressedSize;
+        // the compressed data, either in memory or spilled to a temporary file
+        private ByteArrayOutputStream data;
+        private File spillFile;
+
+        private CompressedEntry(long lastModified) {
+            this.lastModified = lastModified;
+        }
+
+        private void delete() {
+            data = null;
+            if (spillFile != null) {
+                try {
+                    Files.deleteIfExists(spillFile.toPath());
+                } catch (IOException ignored) {
+                }
+                spillFile = null;
+            }
+        }
+    }
+
+    /**
+     * Output stream buffering in memory up to {@link #SPILL_THRESHOLD} bytes and spilling to a temporary file beyond
+     */
+    private static final class SpillingOutputStream extends OutputStream {
+
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private File spillFile;
+        private OutputStream spillOut;
+        private long count;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (spillOut == null && count + len > SPILL_THRESHOLD) {
+                // not registered for deletion on exit, which would keep its path in memory: it is deleted once written
+                spillFile = Files.createTempFile("zip-entry-", ".tmp").toFile();
+                spillOut = new BufferedOutputStream(new FileOutputStream(spillFile), BUFFER_SIZE);
+                buffer.writeTo(spillOut);
+                buffer = null;
+            }
+            if (spillOut != null) {
+                spillOut.write(b, off, len);
+            } else {
+                buffer.write(b, off, len);
+            }
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spillOut != null) {
+                spillOut.close();
+            }
+        }
+
+        private void delete() throws IOException {
+            close();
+            if (spillFile != null) {
+                Files.deleteIfExists(spillFile.toPath());
+            }
+        }
+    }
+
+    /**
+     * Writes the entries in the ZIP format and keeps track of the central directory
+     */
+    private static final class ArchiveOutput {
+
+        private final OutputStream out;
+        private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+        private long offset;
+        private int entryCount;
+
+        private ArchiveOutput(OutputStream out) {
+            this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+        }
+
+        private void writeEntry(Item item, CompressedEntry entry) throws IOException {
+            byte[] name = item.name.getBytes(StandardCharsets.UTF_8);
+            int version = entry.method == ZipEntry.DEFLATED ? 20 : 10;
+            int dosTime = toDosTime(entry.lastModified);
+            long headerOffset = offset;
+
+            writeInt(out, LOCAL_HEADER_SIGNATURE);
+            writeShort(out, version);
+            writeShort(out, FLAG_UTF8);
+            writeShort(out, entry.method);
+            writeInt(out, dosTime);
+            writeInt(out, (int) entry.crc);
+            writeInt(out, (int) entry.compressedSize);
+            writeInt(out, (int) entry.size);
+            writeShort(out, name.length);
+            writeShort(out, 0);
+            out.write(name);
+            offset += 30 + name.length;
+
+            if (!item.directory) {
+                writeData(entry);
+                offset += entry.compressedSize;
+            }
+
+            writeInt(centralDirectory, CENTRAL_HEADER_SIGNATURE);
+            writeShort(centralDirectory, version);
+            writeShort(centralDirectory, version);
+            writeShort(centralDirectory, FLAG_UTF8);
+            writeShort(centralDirectory, entry.method);
+            writeInt(centralDirectory, dosTime);
+            writeInt(centralDirectory, (int) entry.crc);
+            writeInt(centralDirectory, (int) entry.compressedSize);
+            writeInt(centralDirectory, (int) entry.size);
+            writeShort(centralDirectory, name.length);
+            writeShort(centralDirectory, 0); // extra field length
+            writeShort(centralDirectory, 0); // comment length
+            writeShort(centralDirectory, 0); // disk number
+            writeShort(centralDirectory, 0); // internal attributes
+            writeInt(centralDirectory, 0); // external attributes
+            writeInt(centralDirectory, (int) headerOffset);
+            centralDirectory.write(name);
+            entryCount++;
+        }
+
+        private void writeData(CompressedEntry entry) throws IOException {
+            if (entry.data != null) {
+                entry.data.writeTo(out);
+            } else {
+                try (InputStream in = new FileInputStream(entry.spillFile)) {
+                    in.transferTo(out);
+                }
+            }
+        }
+
+        private void finish() throws IOException {
+            long centralDirectoryOffset = offset;
+            centralDirectory.writeTo(out);
+            writeInt(out, END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+            writeShort(out, 0); // number of this disk
+            writeShort(out, 0); // disk where the central directory starts
+            writeShort(out, entryCount);
+            writeShort(out, entryCount);
+            writeInt(out, centralDirectory.size());
+            writeInt(out, (int) centralDirectoryOffset);
+            writeShort(out, 0); // comment length
+            out.flush();
+        }
+
+        private static int toDosTime(long time) {
+            LocalDateTime date = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+            if (date.getYear() < 1980) {
+                return (1 << 21) | (1 << 16);
+            }
+            return (date.getYear() - 1980) << 25 | date.getMonthValue() << 21 | date.getDayOfMonth() << 16
+                    | date.getHour() << 11 | date.getMinute() << 5 | date.getSecond() >> 1;
+        }
+
+        private static void writeShort(OutputStream out, int value) throws IOException {
+            out.write(value & 0xFF);
+            out.write((value >>> 8) & 0xFF);
+        }
+
+        private static void writeInt(OutputStream out, int value) throws IOException {
+            writeShort(out, value & 0xFFFF);
+            writeShort(out, (value >>> 16) & 0xFFFF);
+        }
+    }
+}
@@ -0,0 +1,426 @@
+/*******************************************************************************
+ * Copyright 2021 exense GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package ch.exense.commons.processes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of dynamic Class Data Sharing (CDS) archives for the JVMs forked by {@link ForkedJvmBuilder}.
+ *
+ * <p>One archive is kept per distinct JDK, classpath and VM arguments, identified by a hash of the java executable,
+ * of the size and modification date of the JDK runtime image, of the path, size and modification date of the
+ * classpath entries and of the VM arguments, system properties excepted. The first JVM forked for a configuration
+ * dumps the classes it loaded into the archive when it exits (<code>-XX:ArchiveClassesAtExit</code>) and the
+ * following JVMs map the archive (<code>-XX:SharedArchiveFile</code>) instead of parsing and verifying these classes
+ * again. An upgrade of the JDK or VM arguments affecting the archive (heap size, GC, agents...) lead to the creation
+ * of a new archive. The JVM falls back to a regular startup if an archive can't be used.</p>
+ *
+ * <p>A single JVM creates a given archive at a time: it is protected by a file lock held by the process using this
+ * cache until the forked JVM exits, so that the archive folder can be shared by several processes. The lock is
+ * released by the operating system if that process dies. The idle JVMs of a {@link WarmJvmPool} never create an
+ * archive, as their exit when they are evicted would dump the classes of the bootstrap only.</p>
+ *
+ * <p>The classpath entries are checked again at most once per {@value #CLASSPATH_CHECK_INTERVAL_MS}ms, with a single
+ * file system call per entry, so that a JAR replaced in place leads to a new archive instead of an archive rejected
+ * by the JVMs. The JDK is checked once per cache instance.</p>
+ *
+ * <p>CDS only supports classpaths made of JAR files: it is disabled for the classpaths containing non-empty
+ * directories, which would prevent the JVMs using the archive from starting. The CDS logs are written to the standard
+ * error so that the standard output of the forked JVMs is not affected. The lifetimes of the JVMs are recorded per mode to measure the
+ * gain, see {@link #getAverageProcessLifetimeMs(Mode)}.</p>
+ */
+public class CdsArchiveCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CdsArchiveCache.class);
+
+    private static final String ARCHIVE_EXTENSION = ".jsa";
+    private static final String LOCK_EXTENSION = ".lock";
+    static final long CLASSPATH_CHECK_INTERVAL_MS = 1000;
+    private static final List<String> LOGGING_ARGS = List.of("-Xlog:cds*=off", "-Xlog:cds*=warning:stderr");
+
+    public enum Mode {
+        /**
+         * The JVM creates the archive when it exits
+         */
+        ARCHIVING,
+        /**
+         * The JVM uses the archive
+         */
+        SHARED,
+        /**
+         * The JVM runs without archive as the archive of its classpath is being created by another JVM, or as it
+         * isn't allowed to create it
+         */
+        NONE
+    }
+
+    private final File archiveFolder;
+    // the last check of each classpath
+    private final Map<List<String>, ClasspathCheck> classpathChecks = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> jdkDigests = new ConcurrentHashMap<>();
+    private final Map<Mode, LongAdder> launchCounts = new EnumMap<>(Mode.class);
+    private final Map<Mode, LongAdder> lifetimesMs = new EnumMap<>(Mode.class);
+
+    /**
+     * @param archiveFolder the folder containing the archives, created if it doesn't exist. It can be shared by
+     *                      several processes
+     */
+    public CdsArchiveCache(File archiveFolder) {
+        this.archiveFolder = archiveFolder;
+        for (Mode mode : Mode.values()) {
+            launchCounts.put(mode, new LongAdder());
+            lifetimesMs.put(mode, new LongAdder());
+        }
+    }
+
+    /**
+     * Prepares the launch of a JVM
+     *
+     * @param javaPath         the java executable of the JVM
+     * @param classPathEntries the canonical paths of the classpath entries of the JVM
+     * @param vmargs           the VM arguments of the JVM
+     * @return the launch, providing the VM arguments to be added to the command, or null if CDS isn't supported for
+     * the provided classpath
+     * @throws IOException if the archive folder can't be created
+     */
+    Launch prepare(String javaPath, List<String> classPathEntries, List<String> vmargs) throws IOException {
+        return prepare(javaPath, classPathEntries, vmargs, true);
+    }
+
+    /**
+     * Prepares the launch of a JVM
+     *
+     * @param javaPath         the java executable of the JVM
+     * @param classPathEntries the canonical paths of the classpath entries of the JVM
+     * @param vmargs           the VM arguments of the JVM
+     * @param archiving        true if the JVM may create the archive, false if it should only use an existing one
+     * @return the launch, providing the VM arguments to be added to the command, or null if CDS isn't supported for
+     * the provided classpath
+     * @throws IOException if the archive folder can't be created
+     */
+    Launch prepare(String javaPath, List<String> classPathEntries, List<String> vmargs, boolean archiving) throws IOException {
+        Optional<byte[]> classpathDigest = checkClasspath(classPathEntries);
+        if (classpathDigest.isEmpty()) {
+            return null;
+        }
+        Files.createDirectories(archiveFolder.toPath());
+        String hash = hash(jdkDigests.computeIfAbsent(javaPath, CdsArchiveCache::jdkDigest), classpathDigest.get(), vmargs);
+        Path archive = archiveFolder.toPath().resolve(hash + ARCHIVE_EXTENSION);
+        if (Files.exists(archive)) {
+            return new Launch(Mode.SHARED, archive, null, null);
+        }
+        if (!archiving) {
+            return new Launch(Mode.NONE, archive, null, null);
+        }
+        FileLock lock = tryLock(archiveFolder.toPath().resolve(hash + LOCK_EXTENSION));
+        if (lock == null) {
+            return new Launch(Mode.NONE, archive, null, null);
+        }
+        if (Files.exists(archive)) {
+            // created by another JVM in the meantime
+            lock.channel().close();
+            return new Launch(Mode.SHARED, archive, null, null);
+        }
+        // the archive is dumped to a temporary file so that no JVM maps a partially written archive
+        Path tempArchive = archiveFolder.toPath().resolve(hash + "." + UUID.randomUUID() + ARCHIVE_EXTENSION + ".tmp");
+        logger.debug("Creating the CDS archive " + archive);
+        return new Launch(Mode.ARCHIVING, archive, tempArchive, lock);
+    }
+
+    /**
+     * @return the lock, released by closing its channel, or null if it is held by another launch. The lock file itself
+     * is never deleted, as another process could then lock a new file of the same name while the lock is still held
+     */
+    private static FileLock tryLock(Path lockFile) throws IOException {
+        FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = null;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // held by another launch of this process
+        } finally {
+            if (lock == null) {
+                channel.close();
+            }
+        }
+        return lock;
+    }
+
+    private Optional<byte[]> checkClasspath(List<String> classPathEntries) {
+        long now = System.currentTimeMillis();
+        ClasspathCheck check = classpathChecks.get(classPathEntries);
+        if (check == null || now - check.timestamp >= CLASSPATH_CHECK_INTERVAL_MS) {
+            check = new ClasspathCheck(classpathDigest(classPathEntries), now);
+            classpathChecks.put(classPathEntries, check);
+        }
+        return check.digest;
+    }
+
+    /**
+     * @return the digest of the classpath or an empty optional if it contains non-empty directories
+     */
+    private static Optional<byte[]> classpathDigest(List<String> classPathEntries) {
+        MessageDigest digest = newDigest();
+        for (String entry : classPathEntries) {
+            long size = -1;
+            long lastModified = 0;
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(Path.of(entry), BasicFileAttributes.class);
+                if (attributes.isDirectory()) {
+                    String[] directoryContent = new File(entry).list();
+                    if (directoryContent != null && directoryContent.length > 0) {
+                        logger.debug("CDS disabled as the classpath contains the non-empty directory " + entry);
+                        return Optional.empty();
+                    }
+                }
+                size = attributes.size();
+                lastModified = attributes.lastModifiedTime().toMillis();
+            } catch (IOException e) {
+                // missing entry, ignored by the JVM
+            }
+            digest.update((byte) 0);
+            digest.update(entry.getBytes(StandardCharsets.UTF_8));
+            digest.update((size + ":" + lastModified).getBytes(StandardCharsets.UTF_8));
+        }
+        return Optional.of(digest.digest());
+    }
+
+    /**
+     * @return the digest of the JDK of the java executable, changing when the JDK is upgraded in place
+     */
+    private static byte[] jdkDigest(String javaPath) {
+        MessageDigest digest = newDigest();
+        digest.update(javaPath.getBytes(StandardCharsets.UTF_8));
+        File executable = resolveExecutable(javaPath);
+        if (executable != null) {
+            // the runtime image of the JDK, located in lib/modules next to the bin folder of the executable
+            File binFolder = executable.getParentFile();
+            File jdkHome = binFolder != null ? binFolder.getParentFile() : null;
+            File modules = jdkHome != null ? new File(jdkHome, "lib" + File.separator + "modules") : null;
+            for (File file : modules != null ? List.of(executable, modules) : List.of(executable)) {
+                digest.update((byte) 0);
+                digest.update((file.length() + ":" + file.lastModified()).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return digest.digest();
+    }
+
+    private static File resolveExecutable(String javaPath) {
+        File file = new File(javaPath);
+        if (!file.isFile() && file.getParent() == null) {
+            // resolved through the PATH
+            String path = System.getenv("PATH");
+            if (path != null) {
+                for (String folder : path.split(File.pathSeparator)) {
+                    for (String name : List.of(javaPath, javaPath + ".exe")) {
+                        File candidate = new File(folder, name);
+                        if (candidate.isFile()) {
+                            file = candidate;
+                            break;
+                        }
+                    }
+                    if (file.isFile()) {
+                        break;
+                    }
+                }
+            }
+        }
+        try {
+            return file.isFile() ? file.getCanonicalFile() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String hash(byte[] jdkDigest, byte[] classpathDigest, List<String> vmargs) {
+        MessageDigest digest = newDigest();
+        digest.update(jdkDigest);
+        digest.update(classpathDigest);
+        for (String vmarg : vmargs) {
+            // the system properties don't affect the archive and often vary between launches
+            if (!vmarg.startsWith("-D")) {
+                digest.update((byte) 0);
+                digest.update(vmarg.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest(), 0, 16);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param mode the mode of the JVMs
+     * @return the number of JVMs launched in the provided mode that exited
+     */
+    public long getLaunchCount(Mode mode) {
+        return launchCounts.get(mode).sum();
+    }
+
+    /**
+     * @param mode the mode of the JVMs
+     * @return the average lifetime in milliseconds of the JVMs launched in the provided mode, including the dump of
+     * the archive for the mode {@link Mode#ARCHIVING}, or 0 if no such JVM exited yet
+     */
+    public double getAverageProcessLifetimeMs(Mode mode) {
+        long count = launchCounts.get(mode).sum();
+        return count == 0 ? 0 : (double) lifetimesMs.get(mode).sum() / count;
+    }
+
+    private static class ClasspathCheck {
+
+        // the digest of the classpath, empty if the classpath isn't supported
+        private final Optional<byte[]> digest;
+        private final long timestamp;
+
+        private ClasspathCheck(Optional<byte[]> digest, long timestamp) {
+            this.digest = digest;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * A JVM launched using this cache
+     */
+    class Launch {
+
+        private final Mode mode;
+        private final Path archive;
+        private final Path tempArchive;
+        private final FileLock lock;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Launch(Mode mode, Path archive, Path tempArchive, FileLock lock) {
+            this.mode = mode;
+            this.archive = archive;
+            this.tempArchive = tempArchive;
+            this.lock = lock;
+        }
+
+        Mode getMode() {
+            return mode;
+        }
+
+        /**
+         * @return the VM arguments enabling CDS for this launch
+         */
+        List<String> getVmArgs() {
+            List<String> args = new ArrayList<>();
+            if (mode == Mode.ARCHIVING) {
+                args.addAll(LOGGING_ARGS);
+                args.add("-XX:ArchiveClassesAtExit=" + tempArchive.toAbsolutePath());
+            } else if (mode == Mode.SHARED) {
+                args.addAll(LOGGING_ARGS);
+                args.add("-XX:SharedArchiveFile=" + archive.toAbsolutePath());
+            }
+            return args;
+        }
+
+        /**
+         * Marks the JVM as started: the launch is then completed by {@link #onExit(long)} and isn't affected by
+         * {@link #abort()} anymore
+         */
+        void onStart() {
+            started.set(true);
+        }
+
+        /**
+         * Publishes the archive dumped by the JVM and records the lifetime of the JVM
+         *
+         * @param lifetimeMs the lifetime of the JVM in milliseconds, negative if it shouldn't be recorded
+         */
+        void onExit(long lifetimeMs) {
+            if (mode == Mode.ARCHIVING && released.compareAndSet(false, true)) {
+                try {
+                    if (Files.exists(tempArchive) && Files.size(tempArchive) > 0) {
+                        try {
+                            Files.move(tempArchive, archive, StandardCopyOption.ATOMIC_MOVE);
+                        } catch (AtomicMoveNotSupportedException e) {
+                            Files.move(tempArchive, archive);
+                        }
+                        logger.debug("Created the CDS archive " + archive);
+                    } else {
+                        logger.warn("The CDS archive " + archive + " hasn't been created, see the error output of the JVM");
+                    }
+                } catch (IOException e) {
+                    logger.error("Unable to publish the CDS archive " + archive, e);
+                } finally {
+                    release();
+                }
+            }
+            // recorded once the archive has been published
+            if (lifetimeMs >= 0) {
+                launchCounts.get(mode).increment();
+                lifetimesMs.get(mode).add(lifetimeMs);
+            }
+        }
+
+        /**
+         * Releases the lock of the archive if the JVM couldn't be started or hasn't been started. Has no effect once
+         * the JVM has been started
+         */
+        void abort() {
+            if (mode == Mode.ARCHIVING && !started.get() && released.compareAndSet(false, true)) {
+                release();
+            }
+        }
+
+        private void release() {
+            try {
+                Files.deleteIfExists(tempArchive);
+            } catch (IOException e) {
+                logger.error("Unable to delete the temporary CDS archive " + tempArchive, e);
+            }
+            try {
+                lock.channel().close();
+            } catch (IOException e) {
+                logger.error("Unable to release the lock of the CDS archive " + archive, e);
+            }
+        }
+    }
+}
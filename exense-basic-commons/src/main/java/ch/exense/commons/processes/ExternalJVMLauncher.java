@@ -18,6 +18,7 @@ package ch.exense.commons.processes;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import ch.exense.commons.processes.ManagedProcess.ManagedProcessException;
 import org.slf4j.Logger;
@@ -29,11 +30,37 @@ public class ExternalJVMLauncher {
     private final String javaPath;
 
     private final File processLogFolder;
+    private final WarmJvmPool warmJvmPool;
+    private final CdsArchiveCache cdsArchiveCache;
 
     public ExternalJVMLauncher(String javaPath, File processLogFolder) {
+        this(javaPath, processLogFolder, null);
+    }
+
+    /**
+     * @param javaPath         the java executable of the forked JVMs
+     * @param processLogFolder the folder containing the logs of the forked JVMs
+     * @param warmJvmPool      the pool of idle JVMs the launches are handed over to when possible, null to always start
+     *                         a new JVM. The pool can be shared by several launchers
+     */
+    public ExternalJVMLauncher(String javaPath, File processLogFolder, WarmJvmPool warmJvmPool) {
+        this(javaPath, processLogFolder, warmJvmPool, null);
+    }
+
+    /**
+     * @param javaPath         the java executable of the forked JVMs
+     * @param processLogFolder the folder containing the logs of the forked JVMs
+     * @param warmJvmPool      the pool of idle JVMs the launches are handed over to when possible, null to always start
+     *                         a new JVM. The pool can be shared by several launchers
+     * @param cdsArchiveCache  the cache of the CDS archives used to speed up the startup of the forked JVMs, null to
+     *                         disable CDS
+     */
+    public ExternalJVMLauncher(String javaPath, File processLogFolder, WarmJvmPool warmJvmPool, CdsArchiveCache cdsArchiveCache) {
         super();
         this.javaPath = javaPath;
         this.processLogFolder = processLogFolder;
+        this.warmJvmPool = warmJvmPool;
+        this.cdsArchiveCache = cdsArchiveCache;
     }
 
     public ManagedProcess launchExternalJVM(String name, Class<?> mainClass, List<String> vmargs, List<String> progargs) throws ManagedProcessException {
@@ -45,23 +72,59 @@ public class ExternalJVMLauncher {
     }
 
     public ManagedProcess launchExternalJVM(String name, String mainClass, List<String> vmargs, List<String> progargs, boolean redirectOutput) throws ManagedProcessException {
+        if (warmJvmPool != null) {
+            ManagedProcess process = warmJvmPool.launch(javaPath, processLogFolder, name, mainClass, vmargs, progargs,
+                redirectOutput, cdsArchiveCache);
+            if (process != null) {
+                return process;
+            }
+        }
         try {
-            ForkedJvmBuilder forkedJvmBuilder = new ForkedJvmBuilder(javaPath, mainClass, vmargs, progargs);
-            ManagedProcess process = new JvmManagedProcess(forkedJvmBuilder, name, processLogFolder, redirectOutput);
-            process.start();
-            return process;
+            ForkedJvmBuilder forkedJvmBuilder = new ForkedJvmBuilder(javaPath, mainClass, vmargs, progargs, cdsArchiveCache);
+            try {
+                ManagedProcess process = new JvmManagedProcess(forkedJvmBuilder, name, processLogFolder, redirectOutput, true);
+                process.start();
+                return process;
+            } catch (Throwable e) {
+                // release the classpath arg file shared with the other forked JVMs and the CDS archive lock
+                forkedJvmBuilder.close();
+                throw e;
+            }
         } catch (IOException e) {
             throw new ManagedProcessException("Unable to create the java argument file specifying the classpath.", e);
         }
     }
 
-    private static class JvmManagedProcess extends ManagedProcess {
+    static class JvmManagedProcess extends ManagedProcess {
 
         private final ForkedJvmBuilder forkedJvmBuilder;
+        // false for the idle JVMs of a pool, whose lifetime doesn't reflect their startup time
+        private final boolean recordLifetime;
 
-        public JvmManagedProcess(ForkedJvmBuilder result, String name, File baseLogDirectory, boolean redirectOutput) throws ManagedProcessException {
+        public JvmManagedProcess(ForkedJvmBuilder result, String name, File baseLogDirectory, boolean redirectOutput,
+                                 boolean recordLifetime) throws ManagedProcessException {
             super(name, result.getProcessCommand(), baseLogDirectory, redirectOutput);
             this.forkedJvmBuilder = result;
+            this.recordLifetime = recordLifetime;
+        }
+
+        @Override
+        public synchronized void start() throws ManagedProcessException {
+            CdsArchiveCache.Launch cdsLaunch = forkedJvmBuilder.getCdsLaunch();
+            long start = System.nanoTime();
+            try {
+                super.start();
+            } catch (ManagedProcessException e) {
+                if (cdsLaunch != null) {
+                    cdsLaunch.abort();
+                }
+                throw e;
+            }
+            if (cdsLaunch != null) {
+                cdsLaunch.onStart();
+                getProcess().onExit().thenRun(() -> cdsLaunch.onExit(
+                    recordLifetime ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) : -1));
+            }
         }
 
         @Override
@@ -5,24 +5,74 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ForkedJvmBuilder implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(ForkedJvmBuilder.class);
 
-    private final File cpArgFile;
+    // arg files of the resolved classpaths, keyed by the value of the property java.class.path
+    private static final Map<String, ClasspathArgFile> CLASSPATH_ARG_FILES = new ConcurrentHashMap<>();
+
+    private final ClasspathArgFile classpathArgFile;
+    private final CdsArchiveCache.Launch cdsLaunch;
     private final List<String> command = new ArrayList<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
 
     public ForkedJvmBuilder(String javaPath, String mainClass, List<String> vmargs, List<String> progargs) throws IOException {
-        cpArgFile = buildClasspath();
+        this(javaPath, mainClass, vmargs, progargs, null);
+    }
+
+    /**
+     * @param javaPath        the java executable
+     * @param mainClass       the main class of the JVM
+     * @param vmargs          the VM arguments
+     * @param progargs        the arguments of the main class
+     * @param cdsArchiveCache the cache of the CDS archives used to speed up the startup of the JVM, null to disable CDS
+     * @throws IOException if the classpath argument file can't be created
+     */
+    public ForkedJvmBuilder(String javaPath, String mainClass, List<String> vmargs, List<String> progargs,
+                            CdsArchiveCache cdsArchiveCache) throws IOException {
+        this(javaPath, mainClass, vmargs, progargs, cdsArchiveCache, true);
+    }
+
+    /**
+     * @param cdsArchiving true if the JVM may create the CDS archive, false if it may only use an existing archive.
+     *                     See {@link #ForkedJvmBuilder(String, String, List, List, CdsArchiveCache)} for the other
+     *                     parameters
+     */
+    ForkedJvmBuilder(String javaPath, String mainClass, List<String> vmargs, List<String> progargs,
+                     CdsArchiveCache cdsArchiveCache, boolean cdsArchiving) throws IOException {
+        classpathArgFile = resolveClasspath();
+        cdsLaunch = cdsArchiveCache != null
+            ? cdsArchiveCache.prepare(javaPath, classpathArgFile.entries, vmargs, cdsArchiving) : null;
+        File cpArgFile;
+        try {
+            cpArgFile = classpathArgFile.acquire();
+        } catch (IOException e) {
+            if (cdsLaunch != null) {
+                cdsLaunch.abort();
+            }
+            throw e;
+        }
         command.add(javaPath);
-        command.add("@" + cpArgFile.getCanonicalPath());
+        command.add("@" + cpArgFile.getPath());
+        if (cdsLaunch != null) {
+            // added before the VM arguments, which can override them
+            command.addAll(cdsLaunch.getVmArgs());
+        }
         command.addAll(vmargs);
         command.add(mainClass);
         command.addAll(progargs);
@@ -32,36 +82,134 @@ public class ForkedJvmBuilder implements AutoCloseable {
         return command;
     }
 
-    protected static File buildClasspath() throws IOException {
-        //Fix for Java11 compatibility (Classloader is no more an instance of URLClassLoader)
-        String[] classPathEntries = System.getProperty("java.class.path").split(File.pathSeparator);
+    /**
+     * @return the CDS launch of this JVM or null if CDS is disabled
+     */
+    CdsArchiveCache.Launch getCdsLaunch() {
+        return cdsLaunch;
+    }
 
+    /**
+     * Creates a new arg file specifying the classpath of this JVM. The file is owned by the caller, the forked JVMs
+     * themselves share a single arg file per classpath
+     *
+     * @return the arg file
+     * @throws IOException if the file can't be written
+     */
+    protected static File buildClasspath() throws IOException {
         File javaClassPathArgsFile = FileHelper.createTempFile();
+        Files.writeString(javaClassPathArgsFile.toPath(), resolveClasspath().content, StandardCharsets.UTF_8);
+        return javaClassPathArgsFile;
+    }
 
-        try (OutputStreamWriter cp = new OutputStreamWriter(new FileOutputStream(javaClassPathArgsFile), StandardCharsets.UTF_8)) {
-            cp.append("-cp ");
-            cp.append("\"");
+    /**
+     * @return the arg file of the current classpath, whose entries are only resolved on the first call
+     */
+    private static ClasspathArgFile resolveClasspath() throws IOException {
+        //Fix for Java11 compatibility (Classloader is no more an instance of URLClassLoader)
+        String classPath = System.getProperty("java.class.path");
+        ClasspathArgFile classpathArgFile = CLASSPATH_ARG_FILES.get(classPath);
+        if (classpathArgFile == null) {
+            String[] classPathEntries = classPath.split(File.pathSeparator);
+            List<String> canonicalPaths = new ArrayList<>(classPathEntries.length);
             for (String path : classPathEntries) {
-                String absolutePath = new File(path).getCanonicalPath();
-                absolutePath = (isWindows()) ? absolutePath.replace("\\", "/") : absolutePath;
-                cp.append(absolutePath);
-                cp.append(File.pathSeparator);
+                canonicalPaths.add(new File(path).getCanonicalPath());
+            }
+            classpathArgFile = new ClasspathArgFile(canonicalPaths);
+            ClasspathArgFile existing = CLASSPATH_ARG_FILES.putIfAbsent(classPath, classpathArgFile);
+            if (existing != null) {
+                classpathArgFile = existing;
             }
-            cp.append("\"");
         }
-        return javaClassPathArgsFile;
+        return classpathArgFile;
     }
 
     public static boolean isWindows() {
         return System.getProperty("os.name").toLowerCase().contains("win");
     }
 
+    /**
+     * Releases the classpath arg file, which is deleted once no other forked JVM uses it, and the CDS archive lock if
+     * the JVM hasn't been started
+     */
     @Override
     public void close() {
-        if (cpArgFile != null && cpArgFile.exists()) {
-            boolean delete = cpArgFile.delete();
-            if (!delete) {
-                logger.error("Unable to delete temporary file: {}", cpArgFile.getAbsolutePath());
+        if (closed.compareAndSet(false, true)) {
+            if (cdsLaunch != null) {
+                cdsLaunch.abort();
+            }
+            classpathArgFile.release();
+        }
+    }
+
+    /**
+     * Arg file specifying a resolved classpath. The file is named after the hash of its content and shared by the
+     * forked JVMs using the same classpath: it is written by the first of them and deleted when the last of them is
+     * closed
+     */
+    private static class ClasspathArgFile {
+
+        private final List<String> entries;
+        private final String content;
+        private final File file;
+        private int references;
+
+        private ClasspathArgFile(List<String> entries) throws IOException {
+            this.entries = Collections.unmodifiableList(entries);
+            StringBuilder cp = new StringBuilder("-cp \"");
+            for (String absolutePath : entries) {
+                absolutePath = (isWindows()) ? absolutePath.replace("\\", "/") : absolutePath;
+                cp.append(absolutePath);
+                cp.append(File.pathSeparator);
+            }
+            cp.append("\"");
+            this.content = cp.toString();
+            this.file = new File(ArgFileFolder.FOLDER, "classpath-" + hash(content) + ".args");
+        }
+
+        private static String hash(String content) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+                return HexFormat.of().formatHex(digest, 0, 16);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private synchronized File acquire() throws IOException {
+            if (references == 0 || !file.exists()) {
+                Files.writeString(file.toPath(), content, StandardCharsets.UTF_8);
+                file.deleteOnExit();
+            }
+            references++;
+            return file;
+        }
+
+        private synchronized void release() {
+            if (--references == 0 && file.exists()) {
+                boolean delete = file.delete();
+                if (!delete) {
+                    logger.error("Unable to delete temporary file: {}", file.getAbsolutePath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Folder of the shared arg files, created on first use. The folder is private to this JVM, so that the reference
+     * counting isn't affected by other JVMs. Its path is canonical, like the paths of the arg files used to be
+     */
+    private static class ArgFileFolder {
+
+        private static final File FOLDER = createFolder();
+
+        private static File createFolder() {
+            try {
+                File folder = FileHelper.createTempFolder("forked-jvm-classpath-").getCanonicalFile();
+                folder.deleteOnExit();
+                return folder;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to create the folder of the classpath arg files", e);
             }
         }
     }
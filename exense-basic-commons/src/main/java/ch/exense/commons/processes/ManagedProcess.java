@@ -24,6 +24,8 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.security.InvalidParameterException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
@@ -39,6 +41,14 @@ public class ManagedProcess implements Closeable {
 
     private static final String DEFAULT_PROCESS_NAME = "ManagedProcess";
 
+    /**
+     * Time given to the process tree to terminate when stopped, before the survivors are killed forcibly
+     */
+    public static final long DEFAULT_STOP_GRACE_PERIOD_MS = 10000;
+
+    // time to wait for the termination of the processes killed forcibly
+    private static final long FORCED_TERMINATION_TIMEOUT_MS = 5000;
+
     private final ProcessBuilder builder;
     private final String id;
     private final File executionDirectory;
@@ -216,6 +226,20 @@ public class ManagedProcess implements Closeable {
         }
     }
 
+    /**
+     * @return the underlying process or null if not started yet
+     */
+    Process getProcess() {
+        return process;
+    }
+
+    /**
+     * @return true if the process has been started and hasn't terminated yet
+     */
+    public boolean isAlive() {
+        return process != null && process.isAlive();
+    }
+
     public File getExecutionDirectory() {
         return executionDirectory;
     }
@@ -281,6 +305,30 @@ public class ManagedProcess implements Closeable {
         return new ManagedProcessException(message, e);
     }
 
+    /**
+     * Start the process without waiting for its termination
+     *
+     * @return a future completed with the exit value of the process once it terminated, see {@link #onExit()}
+     */
+    public CompletableFuture<Integer> startAsync() throws ManagedProcessException {
+        start();
+        return onExit();
+    }
+
+    /**
+     * Returns a future completed with the exit value of the process once it terminated. No thread is blocked while
+     * waiting, the future can be combined with a timeout using {@link CompletableFuture#orTimeout(long, TimeUnit)}
+     *
+     * @return the future of the exit value
+     * @throws IllegalStateException if the process hasn't been started
+     */
+    public synchronized CompletableFuture<Integer> onExit() {
+        if (process == null) {
+            throw new IllegalStateException("The process " + id + " hasn't been started");
+        }
+        return process.onExit().thenApply(Process::exitValue);
+    }
+
     /**
      * Start the process and wait until the process has terminated
      *
@@ -325,10 +373,90 @@ public class ManagedProcess implements Closeable {
     }
 
     /**
-     * Recursively destroy the process without cleaning up the logs and temporary directory
+     * Recursively destroy the process without cleaning up the logs and temporary directory, see {@link #stop(long)}.
+     * The process and its descendants are given {@value #DEFAULT_STOP_GRACE_PERIOD_MS}ms to terminate
      */
     public void stop() {
-        stopProcess(process);
+        stop(DEFAULT_STOP_GRACE_PERIOD_MS);
+    }
+
+    /**
+     * Recursively destroy the process without cleaning up the logs and temporary directory and wait for the
+     * termination of the process tree, see {@link #stopAsync(long)}
+     *
+     * @param gracePeriodMs the time in ms given to the process tree to terminate before the survivors are killed
+     *                      forcibly
+     */
+    public void stop(long gracePeriodMs) {
+        CompletableFuture<Void> termination = stopAsync(gracePeriodMs);
+        try {
+            termination.get(gracePeriodMs + FORCED_TERMINATION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.error("The process tree of " + id + " didn't terminate after being killed", e);
+        }
+    }
+
+    /**
+     * Recursively destroys the process without blocking and without cleaning up the logs and temporary directory.
+     *
+     * <p>The descendants of the process are captured at once, before any of them is signaled, so that the descendants
+     * of a terminating process can't escape. The process and its descendants are then all requested to terminate
+     * concurrently and the ones still alive after the grace period are killed forcibly. The time to stop the tree is
+     * therefore bounded by the grace period, whatever its size.</p>
+     *
+     * @param gracePeriodMs the time in ms given to the process tree to terminate before the survivors are killed
+     *                      forcibly
+     * @return a future completed once the process and its descendants terminated
+     */
+    public CompletableFuture<Void> stopAsync(long gracePeriodMs) {
+        if (gracePeriodMs < 0) {
+            throw new IllegalArgumentException("gracePeriodMs must be positive");
+        }
+        Process process;
+        synchronized (this) {
+            process = this.process;
+        }
+        if (process == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        //For process starting child processes there is no guaranty that stopping the parent
+        //and waiting on it to finish is sufficient, so stopping all descendants explicitly
+        List<ProcessHandle> processTree = new ArrayList<>();
+        process.descendants().forEach(processTree::add);
+        processTree.add(process.toHandle());
+        // completed once the process itself observed its termination, see isAlive()
+        return stopProcessTreeAsync(processTree, gracePeriodMs).thenCombine(process.onExit(), (v, p) -> null);
+    }
+
+    private static CompletableFuture<Void> stopProcessTreeAsync(List<ProcessHandle> processTree, long gracePeriodMs) {
+        List<ProcessHandle> aliveProcesses = new ArrayList<>(processTree.size());
+        List<CompletableFuture<ProcessHandle>> exits = new ArrayList<>(processTree.size());
+        for (ProcessHandle handle : processTree) {
+            CompletableFuture<ProcessHandle> exit = handle.onExit();
+            if (!exit.isDone()) {
+                handle.destroy();
+                aliveProcesses.add(handle);
+                exits.add(exit);
+            }
+        }
+        if (aliveProcesses.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> termination = CompletableFuture.allOf(exits.toArray(new CompletableFuture<?>[0]));
+        // a single escalation for the whole tree, scheduled on the shared timer of CompletableFuture
+        CompletableFuture.delayedExecutor(gracePeriodMs, TimeUnit.MILLISECONDS).execute(() -> {
+            if (!termination.isDone()) {
+                for (ProcessHandle handle : aliveProcesses) {
+                    if (handle.isAlive()) {
+                        logger.warn("The process " + handle.pid() + " didn't terminate within " + gracePeriodMs + "ms, killing it");
+                        handle.destroyForcibly();
+                    }
+                }
+            }
+        });
+        return termination;
     }
 
     @Override
@@ -352,7 +480,7 @@ public class ManagedProcess implements Closeable {
         }
 
         if (process != null) {
-            stopProcess(process);
+            stop();
             //Close all streams just in case
             try {
                 process.getInputStream().close();
@@ -374,28 +502,6 @@ public class ManagedProcess implements Closeable {
         removeTempLogDirectory();
     }
 
-    private void stopProcess(Process process) {
-        //For process starting child processes there is no guaranty that stopping the parent
-        //and waiting on it to finish is sufficient, so stopping all children explicitly
-        recursiveStopProcess(process.toHandle());
-    }
-
-    private void recursiveStopProcess(ProcessHandle process) {
-        // kill all the children, depth first
-        process.children().forEach(this::recursiveStopProcess);
-        //Stop process and wait for completion
-        process.destroy();
-        try {
-            int counter = 0;
-            while (process.isAlive() && counter < 100) {
-                counter++;
-                Thread.sleep(100);
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-    }
-
     private void removeTempLogDirectory() {
         Thread thread = new Thread(() -> {
             try {
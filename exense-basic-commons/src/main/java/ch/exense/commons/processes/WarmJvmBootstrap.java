@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright 2021 exense GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package ch.exense.commons.processes;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Main class of the idle JVMs of a {@link WarmJvmPool}.
+ *
+ * <p>The JVM starts, then blocks until it receives the main class to be executed and its arguments on its standard
+ * input. The launch request is a count followed by the length-prefixed UTF-8 strings of the main class and of the
+ * arguments. The JVM exits silently if its standard input is closed before a request is received. The bytes following
+ * the request remain available on the standard input of the main class.</p>
+ */
+public final class WarmJvmBootstrap {
+
+    // protection against reading garbage as a launch request
+    private static final int MAX_STRING_COUNT = 65536;
+    private static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+    private WarmJvmBootstrap() {
+    }
+
+    public static void main(String[] args) throws Throwable {
+        List<String> request;
+        try {
+            request = readRequest(System.in);
+        } catch (EOFException e) {
+            // the pool discarded this JVM
+            return;
+        }
+        Class<?> mainClass = Class.forName(request.get(0), true, ClassLoader.getSystemClassLoader());
+        Method main = mainClass.getMethod("main", String[].class);
+        if (!Modifier.isStatic(main.getModifiers())) {
+            throw new NoSuchMethodException("The main method of " + mainClass.getName() + " isn't static");
+        }
+        String[] mainArgs = request.subList(1, request.size()).toArray(new String[0]);
+        try {
+            main.invoke(null, (Object) mainArgs);
+        } catch (InvocationTargetException e) {
+            // behave as if the main class had been launched directly
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes a launch request
+     *
+     * @param out       the standard input of the idle JVM
+     * @param mainClass the name of the main class to be executed
+     * @param args      the arguments of the main class
+     * @throws IOException if the request can't be written
+     */
+    static void writeRequest(OutputStream out, String mainClass, List<String> args) throws IOException {
+        // not closed as the standard input remains available to the main class
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(args.size() + 1);
+        writeString(data, mainClass);
+        for (String arg : args) {
+            writeString(data, arg);
+        }
+        data.flush();
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    static List<String> readRequest(InputStream in) throws IOException {
+        // not buffered, so that no byte following the request is consumed
+        DataInputStream data = new DataInputStream(in);
+        int count = data.readInt();
+        if (count <= 0 || count > MAX_STRING_COUNT) {
+            throw new IOException("Invalid launch request: " + count + " strings");
+        }
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = data.readInt();
+            if (length < 0 || length > MAX_STRING_LENGTH) {
+                throw new IOException("Invalid launch request: string of " + length + " bytes");
+            }
+            byte[] bytes = new byte[length];
+            data.readFully(bytes);
+            strings.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return strings;
+    }
+}
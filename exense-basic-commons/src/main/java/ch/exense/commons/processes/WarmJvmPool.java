@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * Copyright 2021 exense GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package ch.exense.commons.processes;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ch.exense.commons.processes.ExternalJVMLauncher.JvmManagedProcess;
+import ch.exense.commons.processes.ManagedProcess.ManagedProcessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of idle pre-started JVMs used by {@link ExternalJVMLauncher} to skip the startup of the forked JVMs.
+ *
+ * <p>The idle JVMs run {@link WarmJvmBootstrap} and wait for the main class to be executed and its arguments. They
+ * are pooled per launch configuration: java executable, classpath, VM arguments, process name, log folder, output
+ * redirection and CDS archive cache. The first launch of a configuration starts a cold JVM and the pool is then
+ * filled in the background, each JVM taken from the pool being replaced by a new idle one.</p>
+ *
+ * <p>A JVM taken from the pool has been started before the launch: the main class has to be on the classpath of the
+ * JVM and must not depend on state captured at startup, like the start time of the JVM.</p>
+ *
+ * <p>The process name and log folder are part of the configuration as the output of the JVM is redirected to its log
+ * files when it is started. To bound the number of running idle JVMs, the pool of a configuration is evicted once it
+ * hasn't been used during the idle timeout, and the least recently used pool is evicted when the maximum number of
+ * configurations is exceeded.</p>
+ */
+public class WarmJvmPool implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarmJvmPool.class);
+
+    private static final int DEFAULT_MAX_CONFIGURATIONS = 8;
+    private static final long DEFAULT_IDLE_TIMEOUT_MS = 300000;
+
+    private final int idleProcessesPerConfiguration;
+    private final int maxConfigurations;
+    private final long idleTimeoutMs;
+    private final Map<PoolKey, Pool> pools = new ConcurrentHashMap<>();
+    // runs the refills and the evictions
+    private final ScheduledExecutorService executor;
+    private volatile boolean closed;
+
+    /**
+     * Creates a pool keeping at most {@value #DEFAULT_MAX_CONFIGURATIONS} configurations, evicted after
+     * {@value #DEFAULT_IDLE_TIMEOUT_MS}ms without launch
+     *
+     * @param idleProcessesPerConfiguration the number of idle JVMs kept per launch configuration
+     */
+    public WarmJvmPool(int idleProcessesPerConfiguration) {
+        this(idleProcessesPerConfiguration, DEFAULT_MAX_CONFIGURATIONS, DEFAULT_IDLE_TIMEOUT_MS);
+    }
+
+    /**
+     * @param idleProcessesPerConfiguration the number of idle JVMs kept per launch configuration
+     * @param maxConfigurations             the maximum number of launch configurations for which idle JVMs are kept.
+     *                                      The least recently used configuration is evicted when exceeded
+     * @param idleTimeoutMs                 the time in ms after which the idle JVMs of a configuration that hasn't
+     *                                      been launched are stopped
+     */
+    public WarmJvmPool(int idleProcessesPerConfiguration, int maxConfigurations, long idleTimeoutMs) {
+        if (idleProcessesPerConfiguration <= 0) {
+            throw new IllegalArgumentException("idleProcessesPerConfiguration must be greater than 0");
+        }
+        if (maxConfigurations <= 0) {
+            throw new IllegalArgumentException("maxConfigurations must be greater than 0");
+        }
+        if (idleTimeoutMs <= 0) {
+            throw new IllegalArgumentException("idleTimeoutMs must be greater than 0");
+        }
+        this.idleProcessesPerConfiguration = idleProcessesPerConfiguration;
+        this.maxConfigurations = maxConfigurations;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "WarmJvmPool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long evictionPeriodMs = Math.max(1, idleTimeoutMs / 2);
+        executor.scheduleWithFixedDelay(this::evictIdlePools, evictionPeriodMs, evictionPeriodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hands a launch over to an idle JVM of the provided configuration. The pool of the configuration is refilled in
+     * the background, including when no idle JVM was available
+     *
+     * @return the started process or null if no idle JVM is available, in which case the caller should start a new JVM
+     */
+    ManagedProcess launch(String javaPath, File processLogFolder, String name, String mainClass, List<String> vmargs,
+                          List<String> progargs, boolean redirectOutput, CdsArchiveCache cdsArchiveCache) {
+        if (closed) {
+            return null;
+        }
+        PoolKey key = new PoolKey(javaPath, System.getProperty("java.class.path"), vmargs, name, processLogFolder,
+            redirectOutput, cdsArchiveCache);
+        Pool pool = pools.computeIfAbsent(key, Pool::new);
+        pool.lastUsed = System.currentTimeMillis();
+        if (pools.size() > maxConfigurations) {
+            evictLeastRecentlyUsedPool(pool);
+        }
+        try {
+            ManagedProcess process;
+            while ((process = pool.idleProcesses.poll()) != null) {
+                try {
+                    if (process.isAlive()) {
+                        WarmJvmBootstrap.writeRequest(process.getProcessOutputStream(), mainClass, progargs);
+                        logger.debug("Launched " + mainClass + " in the pooled process " + process.getId());
+                        return process;
+                    }
+                    logger.warn("The pooled process " + process.getId() + " died while idle, discarding it");
+                } catch (IOException e) {
+                    logger.warn("Unable to hand the launch over to the pooled process " + process.getId() + ", discarding it", e);
+                }
+                closeQuietly(process);
+            }
+            return null;
+        } finally {
+            scheduleRefill(pool);
+        }
+    }
+
+    /**
+     * @return the number of idle JVMs over all launch configurations
+     */
+    public int getIdleProcessCount() {
+        return pools.values().stream().mapToInt(pool -> pool.idleProcesses.size()).sum();
+    }
+
+    /**
+     * @return the number of launch configurations for which idle JVMs are kept
+     */
+    public int getConfigurationCount() {
+        return pools.size();
+    }
+
+    private void evictLeastRecentlyUsedPool(Pool usedPool) {
+        pools.values().stream()
+            .filter(pool -> pool != usedPool)
+            .min(Comparator.comparingLong(pool -> pool.lastUsed))
+            .ifPresent(pool -> evict(pool, "maximum number of configurations reached"));
+    }
+
+    private void evictIdlePools() {
+        long now = System.currentTimeMillis();
+        for (Pool pool : pools.values()) {
+            if (now - pool.lastUsed >= idleTimeoutMs) {
+                evict(pool, "idle timeout");
+            }
+        }
+    }
+
+    private void evict(Pool pool, String reason) {
+        if (pools.remove(pool.key, pool)) {
+            logger.debug("Evicting the pool " + pool.key + ": " + reason);
+            pool.evicted = true;
+            // the launches aren't delayed by the stop of the evicted JVMs
+            try {
+                executor.execute(() -> closeIdleProcesses(pool));
+            } catch (RejectedExecutionException e) {
+                closeIdleProcesses(pool);
+            }
+        }
+    }
+
+    private void scheduleRefill(Pool pool) {
+        if (!closed && !pool.evicted && pool.refilling.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> refill(pool));
+            } catch (RejectedExecutionException e) {
+                pool.refilling.set(false);
+            }
+        }
+    }
+
+    private void refill(Pool pool) {
+        try {
+            while (!closed && !pool.evicted && pool.idleProcesses.size() < idleProcessesPerConfiguration) {
+                ManagedProcess process = startIdleProcess(pool.key);
+                pool.idleProcesses.add(process);
+                if (closed || pool.evicted) {
+                    // close() or evict() may have missed this process
+                    pool.idleProcesses.remove(process);
+                    closeQuietly(process);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Unable to start an idle JVM for the pool " + pool.key, e);
+        } finally {
+            pool.refilling.set(false);
+        }
+    }
+
+    private ManagedProcess startIdleProcess(PoolKey key) throws IOException, ManagedProcessException {
+        // an idle JVM doesn't create the CDS archive, which would only contain the classes of the bootstrap if the
+        // JVM exited without having been handed a launch over
+        ForkedJvmBuilder forkedJvmBuilder = new ForkedJvmBuilder(key.javaPath, WarmJvmBootstrap.class.getName(),
+            key.vmargs, Collections.emptyList(), key.cdsArchiveCache, false);
+        try {
+            ManagedProcess process = new JvmManagedProcess(forkedJvmBuilder, key.name, key.processLogFolder,
+                key.redirectOutput, false);
+            process.start();
+            return process;
+        } catch (Throwable e) {
+            forkedJvmBuilder.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the idle JVMs. The processes already handed over are not affected
+     */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdown();
+        pools.values().forEach(WarmJvmPool::closeIdleProcesses);
+    }
+
+    private static void closeIdleProcesses(Pool pool) {
+        ManagedProcess process;
+        while ((process = pool.idleProcesses.poll()) != null) {
+            closeQuietly(process);
+        }
+    }
+
+    private static void closeQuietly(ManagedProcess process) {
+        try {
+            process.close();
+        } catch (IOException e) {
+            logger.error("Error while closing the pooled process " + process.getId(), e);
+        }
+    }
+
+    private static class Pool {
+
+        private final PoolKey key;
+        private final BlockingQueue<ManagedProcess> idleProcesses = new LinkedBlockingQueue<>();
+        private final AtomicBoolean refilling = new AtomicBoolean();
+        private volatile long lastUsed;
+        private volatile boolean evicted;
+
+        private Pool(PoolKey key) {
+            this.key = key;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    private static class PoolKey {
+
+        private final String javaPath;
+        private final String classpath;
+        private final List<String> vmargs;
+        private final String name;
+        private final File processLogFolder;
+        private final boolean redirectOutput;
+        private final CdsArchiveCache cdsArchiveCache;
+
+        private PoolKey(String javaPath, String classpath, List<String> vmargs, String name, File processLogFolder,
+                        boolean redirectOutput, CdsArchiveCache cdsArchiveCache) {
+            this.javaPath = javaPath;
+            this.classpath = classpath;
+            this.vmargs = Collections.unmodifiableList(new ArrayList<>(vmargs));
+            this.name = name;
+            this.processLogFolder = processLogFolder;
+            this.redirectOutput = redirectOutput;
+            this.cdsArchiveCache = cdsArchiveCache;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            PoolKey poolKey = (PoolKey) o;
+            return redirectOutput == poolKey.redirectOutput && Objects.equals(javaPath, poolKey.javaPath)
+                && Objects.equals(classpath, poolKey.classpath) && vmargs.equals(poolKey.vmargs)
+                && Objects.equals(name, poolKey.name) && Objects.equals(processLogFolder, poolKey.processLogFolder)
+                && cdsArchiveCache == poolKey.cdsArchiveCache;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(javaPath, classpath, vmargs, name, processLogFolder, redirectOutput, cdsArchiveCache);
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + vmargs;
+        }
+    }
+}
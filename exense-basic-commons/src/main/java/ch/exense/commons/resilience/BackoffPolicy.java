@@ -0,0 +1,90 @@
+package ch.exense.commons.resilience;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Policy computing the delay before each retry of an operation, see
+ * {@link RetryHelper#executeWithRetryOnExceptions(RetryHelper.CheckedSupplier, int, BackoffPolicy, RetryBudget, java.util.List, String)}
+ */
+@FunctionalInterface
+public interface BackoffPolicy {
+
+    /**
+     * @param retry           the number of the retry, starting at 1 for the first retry
+     * @param previousDelayMs the delay applied before the previous retry, 0 for the first retry
+     * @return the delay in milliseconds to wait before the retry
+     */
+    long delayMs(int retry, long previousDelayMs);
+
+    /**
+     * @param maxDelayMs the maximum delay in milliseconds
+     * @return a policy applying the delays of this policy, limited to the provided maximum
+     */
+    default BackoffPolicy capped(long maxDelayMs) {
+        if (maxDelayMs < 0) {
+            throw new IllegalArgumentException("maxDelayMs must be positive");
+        }
+        return (retry, previousDelayMs) -> Math.min(maxDelayMs, delayMs(retry, previousDelayMs));
+    }
+
+    /**
+     * @param delayMs the delay in milliseconds
+     * @return a policy applying the same delay before each retry
+     */
+    static BackoffPolicy fixed(long delayMs) {
+        if (delayMs < 0) {
+            throw new IllegalArgumentException("delayMs must be positive");
+        }
+        return (retry, previousDelayMs) -> delayMs;
+    }
+
+    /**
+     * @param initialDelayMs the delay before the first retry in milliseconds
+     * @param multiplier     the factor applied to the delay after each retry
+     * @return a policy multiplying the delay by the provided factor after each retry. Should be combined with
+     * {@link #capped(long)} to bound the delays
+     */
+    static BackoffPolicy exponential(long initialDelayMs, double multiplier) {
+        if (initialDelayMs < 0) {
+            throw new IllegalArgumentException("initialDelayMs must be positive");
+        }
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("multiplier must be greater than or equal to 1");
+        }
+        return (retry, previousDelayMs) -> {
+            double delay = initialDelayMs * Math.pow(multiplier, retry - 1);
+            return delay >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) delay;
+        };
+    }
+
+    /**
+     * Exponential backoff with "decorrelated jitter": each delay is drawn randomly between the base delay and three
+     * times the previous delay, limited to the maximum delay. This spreads the retries of concurrent callers instead
+     * of retrying in lockstep
+     *
+     * @param baseDelayMs the minimum delay in milliseconds
+     * @param maxDelayMs  the maximum delay in milliseconds
+     * @return the policy
+     */
+    static BackoffPolicy decorrelatedJitter(long baseDelayMs, long maxDelayMs) {
+        if (baseDelayMs <= 0) {
+            throw new IllegalArgumentException("baseDelayMs must be greater than 0");
+        }
+        if (maxDelayMs < baseDelayMs) {
+            throw new IllegalArgumentException("maxDelayMs must be greater than or equal to baseDelayMs");
+        }
+        return (retry, previousDelayMs) -> {
+            long previous = Math.max(baseDelayMs, previousDelayMs);
+            // saturating multiplication, and capped before sampling so that the delays stay spread below the maximum
+            long upperBound = previous > Long.MAX_VALUE / 3 ? Long.MAX_VALUE : previous * 3;
+            upperBound = Math.min(maxDelayMs, upperBound);
+            if (upperBound == baseDelayMs) {
+                return baseDelayMs;
+            } else if (upperBound == Long.MAX_VALUE) {
+                // the bound is exclusive and can't be incremented
+                return ThreadLocalRandom.current().nextLong(baseDelayMs, upperBound);
+            }
+            return ThreadLocalRandom.current().nextLong(baseDelayMs, upperBound + 1);
+        };
+    }
+}
@@ -0,0 +1,281 @@
+package ch.exense.commons.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bulkhead limiting the number of concurrent calls to a dependency.
+ * <p>
+ * Calls exceeding the limit wait in a bounded queue, in arrival order, for at most the configured duration. Calls
+ * that can't be queued or that waited too long are rejected with a {@link BulkheadFullException}, which isn't
+ * retryable by {@link RetryHelper}, so that retries don't add to the load of an overloaded dependency.
+ * <p>
+ * The limit is either fixed, see {@link #fixed(String, int, int, long)}, or adapted to the behaviour of the dependency
+ * using additive increase / multiplicative decrease, see {@link #adaptive(String, int, int, int, int, long,
+ * RetryableExceptionClassifier)}. Only the failures signaling an overload of the dependency, such as timeouts,
+ * decrease the adaptive limit: business exceptions and interruptions leave it unchanged
+ */
+public class Bulkhead {
+
+    private static final Logger logger = LoggerFactory.getLogger(Bulkhead.class);
+
+    // factor applied to the adaptive limit on each failure
+    private static final double DECREASE_FACTOR = 0.9;
+    // failures signaling an overload by default
+    private static final RetryableExceptionClassifier DEFAULT_OVERLOAD_CLASSIFIER = RetryableExceptionClassifier.of(
+        List.of(TimeoutException.class, SocketTimeoutException.class));
+
+    private final String name;
+    private final boolean adaptive;
+    private final RetryableExceptionClassifier overloadClassifier;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueuedCalls;
+    private final long maxWaitNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    // guarded by lock, and volatile to be read by the getters without locking
+    private volatile double limit;
+    private volatile int inFlightCalls;
+    private volatile int queuedCalls;
+
+    private Bulkhead(String name, boolean adaptive, int initialLimit, int minLimit, int maxLimit, int maxQueuedCalls,
+                     long maxWaitMs, RetryableExceptionClassifier overloadClassifier) {
+        this.name = Objects.requireNonNull(name);
+        this.overloadClassifier = Objects.requireNonNull(overloadClassifier);
+        if (minLimit <= 0 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("The limits must be greater than 0 and minLimit at most maxLimit");
+        }
+        if (initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("initialLimit must be between minLimit and maxLimit");
+        }
+        if (maxQueuedCalls < 0) {
+            throw new IllegalArgumentException("maxQueuedCalls must be positive");
+        }
+        if (maxWaitMs < 0) {
+            throw new IllegalArgumentException("maxWaitMs must be positive");
+        }
+        this.adaptive = adaptive;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueuedCalls = maxQueuedCalls;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+    }
+
+    /**
+     * @param name               the name of the bulkhead, for logging purposes
+     * @param maxConcurrentCalls the maximum number of concurrent calls
+     * @param maxQueuedCalls     the maximum number of calls waiting for a permit, 0 to reject the calls exceeding the
+     *                           limit immediately
+     * @param maxWaitMs          the maximum duration in milliseconds a call waits for a permit
+     * @return a bulkhead with a fixed limit
+     */
+    public static Bulkhead fixed(String name, int maxConcurrentCalls, int maxQueuedCalls, long maxWaitMs) {
+        return new Bulkhead(name, false, maxConcurrentCalls, maxConcurrentCalls, maxConcurrentCalls, maxQueuedCalls, maxWaitMs,
+            DEFAULT_OVERLOAD_CLASSIFIER);
+    }
+
+    /**
+     * Returns a bulkhead adapting its limit, reduced by the calls failing with a {@link TimeoutException} or a
+     * {@link SocketTimeoutException}, see {@link #adaptive(String, int, int, int, int, long,
+     * RetryableExceptionClassifier)}
+     *
+     * @param name           the name of the bulkhead, for logging purposes
+     * @param initialLimit   the initial maximum number of concurrent calls
+     * @param minLimit       the lower bound of the limit
+     * @param maxLimit       the upper bound of the limit
+     * @param maxQueuedCalls the maximum number of calls waiting for a permit, 0 to reject the calls exceeding the
+     *                       limit immediately
+     * @param maxWaitMs      the maximum duration in milliseconds a call waits for a permit
+     * @return a bulkhead with an adaptive limit
+     */
+    public static Bulkhead adaptive(String name, int initialLimit, int minLimit, int maxLimit, int maxQueuedCalls,
+                                    long maxWaitMs) {
+        return adaptive(name, initialLimit, minLimit, maxLimit, maxQueuedCalls, maxWaitMs, DEFAULT_OVERLOAD_CLASSIFIER);
+    }
+
+    /**
+     * Returns a bulkhead adapting its limit: the limit grows by one after a full limit of successful calls, as long as
+     * the calls actually use the current limit, and is reduced by 10% on each call failing with an overload signal.
+     * The other failures, including interruptions, leave the limit unchanged
+     *
+     * @param name               the name of the bulkhead, for logging purposes
+     * @param initialLimit       the initial maximum number of concurrent calls
+     * @param minLimit           the lower bound of the limit
+     * @param maxLimit           the upper bound of the limit
+     * @param maxQueuedCalls     the maximum number of calls waiting for a permit, 0 to reject the calls exceeding the
+     *                           limit immediately
+     * @param maxWaitMs          the maximum duration in milliseconds a call waits for a permit
+     * @param overloadClassifier the classifier of the failures signaling an overload of the dependency, the failures
+     *                           being matched with their cause chain
+     * @return a bulkhead with an adaptive limit
+     */
+    public static Bulkhead adaptive(String name, int initialLimit, int minLimit, int maxLimit, int maxQueuedCalls,
+                                    long maxWaitMs, RetryableExceptionClassifier overloadClassifier) {
+        return new Bulkhead(name, true, initialLimit, minLimit, maxLimit, maxQueuedCalls, maxWaitMs, overloadClassifier);
+    }
+
+    /**
+     * Executes an operation once a permit is available
+     *
+     * @param operation the operation to execute
+     * @param <T>       the return type of the operation
+     * @return the result of the operation
+     * @throws BulkheadFullException if the queue is full or if no permit became available in time
+     * @throws InterruptedException  if interrupted while waiting for a permit
+     * @throws Exception             the exception thrown by the operation
+     */
+    public <T> T execute(RetryHelper.CheckedSupplier<T> operation) throws Exception {
+        acquire();
+        T result;
+        try {
+            result = operation.get();
+        } catch (Throwable t) {
+            release(t);
+            throw t;
+        }
+        release(null);
+        return result;
+    }
+
+    /**
+     * @param operation the operation to decorate
+     * @param <T>       the return type of the operation
+     * @return an operation executing the provided one through this bulkhead, see {@link #execute(RetryHelper.CheckedSupplier)}
+     */
+    public <T> RetryHelper.CheckedSupplier<T> decorate(RetryHelper.CheckedSupplier<T> operation) {
+        Objects.requireNonNull(operation);
+        return () -> execute(operation);
+    }
+
+    private void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            // queued calls are served first
+            if (queuedCalls == 0 && inFlightCalls < currentLimit()) {
+                inFlightCalls++;
+                return;
+            }
+            if (queuedCalls >= maxQueuedCalls) {
+                throw rejected("the queue is full");
+            }
+            queuedCalls++;
+            try {
+                long remainingNanos = maxWaitNanos;
+                while (inFlightCalls >= currentLimit()) {
+                    if (remainingNanos <= 0) {
+                        throw rejected("no permit became available in time");
+                    }
+                    remainingNanos = permitReleased.awaitNanos(remainingNanos);
+                }
+            } catch (InterruptedException e) {
+                // pass on a signal that may have been consumed by this call
+                permitReleased.signal();
+                throw e;
+            } finally {
+                queuedCalls--;
+            }
+            inFlightCalls++;
+            if (inFlightCalls < currentLimit()) {
+                // more permits may have been released or the limit increased
+                permitReleased.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param failure the failure of the call, null if it succeeded
+     */
+    private void release(Throwable failure) {
+        lock.lock();
+        try {
+            if (adaptive) {
+                double previousLimit = limit;
+                if (failure != null) {
+                    if (!(failure instanceof InterruptedException) && overloadClassifier.isRetryable(failure)) {
+                        limit = Math.max(minLimit, previousLimit * DECREASE_FACTOR);
+                    }
+                } else if (inFlightCalls * 2 >= previousLimit) {
+                    // the limit is only increased if it is actually used
+                    limit = Math.min(maxLimit, previousLimit + 1 / previousLimit);
+                }
+                if ((int) limit != (int) previousLimit) {
+                    logger.debug("Bulkhead '{}' limit changed from {} to {}", name, (int) previousLimit, (int) limit);
+                }
+            }
+            inFlightCalls--;
+            permitReleased.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    private BulkheadFullException rejected(String reason) {
+        rejectedCalls.increment();
+        return new BulkheadFullException("Bulkhead '" + name + "' is full, the call was rejected as " + reason);
+    }
+
+    /**
+     * @return the current maximum number of concurrent calls
+     */
+    public int getLimit() {
+        return currentLimit();
+    }
+
+    /**
+     * @return the number of calls currently executing
+     */
+    public int getInFlightCallCount() {
+        return inFlightCalls;
+    }
+
+    /**
+     * @return the number of calls currently waiting for a permit
+     */
+    public int getQueuedCallCount() {
+        return queuedCalls;
+    }
+
+    /**
+     * @return the number of calls rejected by this bulkhead
+     */
+    public long getRejectedCallCount() {
+        return rejectedCalls.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead{name='" + name + "', limit=" + getLimit() + ", inFlight=" + inFlightCalls + ", queued="
+            + queuedCalls + "}";
+    }
+
+    /**
+     * Exception thrown when a call is rejected by a full bulkhead
+     */
+    public static class BulkheadFullException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public BulkheadFullException(String message) {
+            super(message);
+        }
+    }
+}
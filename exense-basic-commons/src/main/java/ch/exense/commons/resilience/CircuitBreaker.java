@@ -0,0 +1,278 @@
+package ch.exense.commons.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Circuit breaker failing fast the calls to a dependency that is down.
+ * <p>
+ * While CLOSED, the outcomes of the calls are recorded in a sliding window of the last calls. Once the window contains
+ * enough calls and the failure rate reaches the threshold, the breaker becomes OPEN and rejects all the calls with a
+ * {@link CallNotPermittedException} for the configured duration. It then becomes HALF_OPEN and lets a limited number
+ * of probe calls through: the breaker closes if they all succeed and opens again as soon as one of them fails.
+ * <p>
+ * The breaker is lock-free: the state is swapped atomically and the window is a ring of atomic slots. Decorated
+ * operations can be passed to {@link RetryHelper}, in which case the attempts made while the breaker is open fail
+ * immediately, {@link CallNotPermittedException} not being retryable
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDurationNanos;
+    private final int halfOpenProbes;
+    private final AtomicReference<StateHolder> state;
+    private final LongAdder notPermittedCalls = new LongAdder();
+
+    /**
+     * @param name                 the name of the breaker, for logging purposes
+     * @param windowSize           the number of calls recorded in the sliding window
+     * @param minimumCalls         the minimum number of calls in the window before the failure rate is evaluated
+     * @param failureRateThreshold the failure rate between 0 (exclusive) and 1 opening the breaker
+     * @param openDurationMs       the duration in milliseconds during which the calls are rejected once open
+     * @param halfOpenProbes       the number of calls permitted while half-open
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold, long openDurationMs,
+                          int halfOpenProbes) {
+        this.name = Objects.requireNonNull(name);
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be greater than 0");
+        }
+        if (minimumCalls <= 0 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException("minimumCalls must be between 1 and windowSize");
+        }
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+            throw new IllegalArgumentException("failureRateThreshold must be greater than 0 and at most 1");
+        }
+        if (openDurationMs < 0) {
+            throw new IllegalArgumentException("openDurationMs must be positive");
+        }
+        if (halfOpenProbes <= 0) {
+            throw new IllegalArgumentException("halfOpenProbes must be greater than 0");
+        }
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = openDurationMs * 1_000_000;
+        this.halfOpenProbes = halfOpenProbes;
+        this.state = new AtomicReference<>(closed());
+    }
+
+    /**
+     * Executes an operation through this breaker
+     *
+     * @param operation the operation to execute
+     * @param <T>       the return type of the operation
+     * @return the result of the operation
+     * @throws CallNotPermittedException if the breaker is open
+     * @throws Exception                 the exception thrown by the operation, which is recorded as a failure
+     */
+    public <T> T execute(RetryHelper.CheckedSupplier<T> operation) throws Exception {
+        StateHolder holder = acquirePermission();
+        T result;
+        try {
+            result = operation.get();
+        } catch (Throwable t) {
+            onResult(holder, false);
+            throw t;
+        }
+        onResult(holder, true);
+        return result;
+    }
+
+    /**
+     * @param operation the operation to decorate
+     * @param <T>       the return type of the operation
+     * @return an operation executing the provided one through this breaker, see {@link #execute(RetryHelper.CheckedSupplier)}
+     */
+    public <T> RetryHelper.CheckedSupplier<T> decorate(RetryHelper.CheckedSupplier<T> operation) {
+        Objects.requireNonNull(operation);
+        return () -> execute(operation);
+    }
+
+    /**
+     * @return the current state of the breaker. An open breaker whose open duration has elapsed is reported as open
+     * until the next call
+     */
+    public State getState() {
+        return state.get().state;
+    }
+
+    /**
+     * @return the failure rate of the calls in the sliding window, or -1 if the breaker isn't closed or the window
+     * doesn't contain the minimum number of calls yet
+     */
+    public double getFailureRate() {
+        SlidingWindow window = state.get().window;
+        if (window == null) {
+            return -1;
+        }
+        int calls = window.calls.get();
+        return calls < minimumCalls ? -1 : (double) window.failures.get() / calls;
+    }
+
+    /**
+     * @return the number of calls rejected by this breaker
+     */
+    public long getNotPermittedCallCount() {
+        return notPermittedCalls.sum();
+    }
+
+    private StateHolder acquirePermission() {
+        while (true) {
+            StateHolder holder = state.get();
+            switch (holder.state) {
+                case CLOSED:
+                    return holder;
+                case OPEN:
+                    if (System.nanoTime() - holder.openedAt < openDurationNanos) {
+                        throw notPermitted();
+                    }
+                    // only one of the concurrent callers performs the transition, the others retry with the new state
+                    transition(holder, halfOpen());
+                    break;
+                case HALF_OPEN:
+                    if (holder.remainingProbes.getAndDecrement() > 0) {
+                        return holder;
+                    }
+                    throw notPermitted();
+                default:
+                    throw new IllegalStateException("Unknown state " + holder.state);
+            }
+        }
+    }
+
+    private CallNotPermittedException notPermitted() {
+        notPermittedCalls.increment();
+        return new CallNotPermittedException("Circuit breaker '" + name + "' is open, the call is not permitted");
+    }
+
+    private void onResult(StateHolder holder, boolean success) {
+        switch (holder.state) {
+            case CLOSED:
+                SlidingWindow window = holder.window;
+                window.record(!success);
+                int calls = window.calls.get();
+                if (!success && calls >= minimumCalls && (double) window.failures.get() / calls >= failureRateThreshold) {
+                    transition(holder, open());
+                }
+                break;
+            case HALF_OPEN:
+                if (!success) {
+                    transition(holder, open());
+                } else if (holder.successfulProbes.incrementAndGet() == halfOpenProbes) {
+                    transition(holder, closed());
+                }
+                break;
+            default:
+                // results of calls permitted before a transition are ignored
+                break;
+        }
+    }
+
+    private void transition(StateHolder from, StateHolder to) {
+        if (state.compareAndSet(from, to)) {
+            logger.info("Circuit breaker '{}' changed from {} to {}", name, from.state, to.state);
+        }
+    }
+
+    private StateHolder closed() {
+        return new StateHolder(State.CLOSED, new SlidingWindow(windowSize), 0);
+    }
+
+    private StateHolder open() {
+        return new StateHolder(State.OPEN, null, System.nanoTime());
+    }
+
+    private StateHolder halfOpen() {
+        StateHolder holder = new StateHolder(State.HALF_OPEN, null, 0);
+        holder.remainingProbes.set(halfOpenProbes);
+        return holder;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker{name='" + name + "', state=" + getState() + "}";
+    }
+
+    /**
+     * Immutable state of the breaker. A new instance is created on each transition, which makes the transitions simple
+     * compare-and-set operations and ensures that outcomes of calls made in a previous state don't leak into the new
+     * state
+     */
+    private static class StateHolder {
+
+        private final State state;
+        private final SlidingWindow window;
+        private final long openedAt;
+        private final AtomicInteger remainingProbes = new AtomicInteger();
+        private final AtomicInteger successfulProbes = new AtomicInteger();
+
+        private StateHolder(State state, SlidingWindow window, long openedAt) {
+            this.state = state;
+            this.window = window;
+            this.openedAt = openedAt;
+        }
+    }
+
+    /**
+     * Ring of the outcomes of the last calls. Each call claims the next slot and replaces its previous outcome, the
+     * counters being adjusted by the difference
+     */
+    private static class SlidingWindow {
+
+        private static final int EMPTY = 0;
+        private static final int SUCCESS = 1;
+        private static final int FAILURE = 2;
+
+        private final AtomicIntegerArray outcomes;
+        private final AtomicLong index = new AtomicLong();
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        private SlidingWindow(int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+
+        private void record(boolean failure) {
+            int slot = (int) (index.getAndIncrement() % outcomes.length());
+            int outcome = failure ? FAILURE : SUCCESS;
+            int previous = outcomes.getAndSet(slot, outcome);
+            if (previous == EMPTY) {
+                calls.incrementAndGet();
+            }
+            int delta = (failure ? 1 : 0) - (previous == FAILURE ? 1 : 0);
+            if (delta != 0) {
+                failures.addAndGet(delta);
+            }
+        }
+    }
+
+    /**
+     * Exception thrown when a call is rejected by an open breaker
+     */
+    public static class CallNotPermittedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public CallNotPermittedException(String message) {
+            // thrown on each fail-fast rejection: the stack trace isn't filled, as it's costly and of no use
+            super(message, null, false, false);
+        }
+    }
+}
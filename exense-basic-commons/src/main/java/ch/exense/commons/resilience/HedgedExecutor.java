@@ -0,0 +1,294 @@
+package ch.exense.commons.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor of hedged requests, bounding the tail latency of idempotent operations.
+ * <p>
+ * The operation is executed once and, if it hasn't completed after the hedge delay, a second speculative attempt is
+ * started. The first successful attempt provides the result and the other one is cancelled by interrupting its
+ * thread. The execution fails only if both attempts fail. The hedge delay is either fixed or derived from a percentile
+ * of the latencies observed recently, measured from the start of the executions, so that only the slowest executions
+ * are hedged. An optional
+ * {@link RetryBudget} limits the ratio of hedged executions, to prevent the hedges from doubling the load of a
+ * dependency that is slow for everybody.
+ * <p>
+ * Operations must be idempotent as both attempts may complete
+ */
+public class HedgedExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(HedgedExecutor.class);
+
+    /**
+     * Executor of the attempts. The attempts may block, they're therefore executed on virtual threads
+     */
+    private static final ExecutorService ATTEMPT_EXECUTOR = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("HedgedExecutor-attempt-", 0).factory());
+
+    // number of latencies kept to compute the percentile, and number of new latencies triggering a new computation
+    private static final int LATENCY_SAMPLES = 512;
+    private static final int RECOMPUTE_INTERVAL = 64;
+
+    private final String name;
+    private final double percentile;
+    private final long minDelayMs;
+    private final long maxDelayMs;
+    private final RetryBudget retryBudget;
+    private final AtomicLongArray latencies;
+    private final AtomicLong recordedLatencies = new AtomicLong();
+    private volatile long hedgeDelayMs;
+    private final LongAdder hedgedExecutions = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    private HedgedExecutor(String name, double percentile, long minDelayMs, long maxDelayMs, RetryBudget retryBudget) {
+        this.name = Objects.requireNonNull(name);
+        if (minDelayMs < 0 || minDelayMs > maxDelayMs) {
+            throw new IllegalArgumentException("The delays must be positive and minDelayMs at most maxDelayMs");
+        }
+        this.percentile = percentile;
+        this.minDelayMs = minDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.retryBudget = retryBudget;
+        this.latencies = percentile > 0 ? new AtomicLongArray(LATENCY_SAMPLES) : null;
+        // until enough latencies have been observed, the hedges are conservatively started after the maximum delay
+        this.hedgeDelayMs = maxDelayMs;
+    }
+
+    /**
+     * @param name         the name of the executor, for logging purposes
+     * @param hedgeDelayMs the delay in milliseconds after which the speculative attempt is started
+     * @param retryBudget  the budget limiting the speculative attempts, null for no limit
+     * @return an executor starting the speculative attempts after a fixed delay
+     */
+    public static HedgedExecutor fixedDelay(String name, long hedgeDelayMs, RetryBudget retryBudget) {
+        return new HedgedExecutor(name, 0, hedgeDelayMs, hedgeDelayMs, retryBudget);
+    }
+
+    /**
+     * @param name        the name of the executor, for logging purposes
+     * @param percentile  the percentile of the observed latencies used as hedge delay, for instance 0.95
+     * @param minDelayMs  the lower bound of the hedge delay in milliseconds
+     * @param maxDelayMs  the upper bound of the hedge delay in milliseconds, also used until enough latencies have
+     *                    been observed
+     * @param retryBudget the budget limiting the speculative attempts, null for no limit
+     * @return an executor starting the speculative attempts after a delay derived from the observed latencies
+     */
+    public static HedgedExecutor percentileDelay(String name, double percentile, long minDelayMs, long maxDelayMs,
+                                                 RetryBudget retryBudget) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("percentile must be between 0 and 1 (exclusive)");
+        }
+        return new HedgedExecutor(name, percentile, minDelayMs, maxDelayMs, retryBudget);
+    }
+
+    /**
+     * Executes a hedged operation and waits for its result
+     *
+     * @param operation the idempotent operation to execute
+     * @param <T>       the return type of the operation
+     * @return the result of the first successful attempt
+     * @throws InterruptedException if interrupted while waiting, in which case the attempts are cancelled
+     * @throws Exception            the exception of the last failed attempt if all attempts failed
+     */
+    public <T> T execute(RetryHelper.CheckedSupplier<T> operation) throws Exception {
+        CompletableFuture<T> future = executeAsync(operation);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Executes a hedged operation asynchronously. Cancelling the returned future cancels the running attempts
+     *
+     * @param operation the idempotent operation to execute
+     * @param <T>       the return type of the operation
+     * @return a future completed with the result of the first successful attempt, or exceptionally with the exception
+     * of the last failed attempt if all attempts failed
+     */
+    public <T> CompletableFuture<T> executeAsync(RetryHelper.CheckedSupplier<T> operation) {
+        Objects.requireNonNull(operation);
+        if (retryBudget != null) {
+            retryBudget.onRequest();
+        }
+        HedgedExecution<T> execution = new HedgedExecution<>(operation);
+        execution.startAttempt(0);
+        if (!execution.result.isDone()) {
+            long delayMs = hedgeDelayMs;
+            try {
+                CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS, ATTEMPT_EXECUTOR)
+                    .execute(execution::startHedge);
+            } catch (RejectedExecutionException e) {
+                logger.warn("Unable to schedule the hedge of {}", name, e);
+            }
+        }
+        return execution.result;
+    }
+
+    /**
+     * @return the current delay in milliseconds after which the speculative attempts are started
+     */
+    public long getHedgeDelayMs() {
+        return hedgeDelayMs;
+    }
+
+    /**
+     * @return the number of executions for which a speculative attempt has been started
+     */
+    public long getHedgedExecutionCount() {
+        return hedgedExecutions.sum();
+    }
+
+    /**
+     * @return the number of executions whose result has been provided by the speculative attempt
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+
+    private void recordLatency(long latencyNanos) {
+        if (latencies == null) {
+            return;
+        }
+        long count = recordedLatencies.getAndIncrement();
+        latencies.set((int) (count % LATENCY_SAMPLES), latencyNanos);
+        if ((count + 1) % RECOMPUTE_INTERVAL == 0) {
+            updateHedgeDelay((int) Math.min(count + 1, LATENCY_SAMPLES));
+        }
+    }
+
+    private void updateHedgeDelay(int sampleCount) {
+        long[] samples = new long[sampleCount];
+        for (int i = 0; i < sampleCount; i++) {
+            samples[i] = latencies.get(i);
+        }
+        Arrays.sort(samples);
+        long percentileNanos = samples[Math.min(sampleCount - 1, (int) Math.ceil(percentile * sampleCount) - 1)];
+        long delayMs = Math.max(minDelayMs, Math.min(maxDelayMs, TimeUnit.NANOSECONDS.toMillis(percentileNanos)));
+        if (delayMs != hedgeDelayMs) {
+            logger.debug("Hedge delay of {} changed from {}ms to {}ms", name, hedgeDelayMs, delayMs);
+            hedgeDelayMs = delayMs;
+        }
+    }
+
+    /**
+     * State of a hedged execution
+     */
+    private class HedgedExecution<T> {
+
+        private final RetryHelper.CheckedSupplier<T> operation;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        // the threads running the attempts, interrupted once the result is known
+        private final AtomicReferenceArray<Thread> attemptThreads = new AtomicReferenceArray<>(2);
+        // number of started attempts that haven't failed yet. The hedge is only started while it is positive
+        private final AtomicInteger pendingAttempts = new AtomicInteger(1);
+        // start of the first attempt. The latencies are measured from this point, so that a slow first attempt beaten
+        // by the hedge is still sampled, at least for the time it has been running
+        private final long startNanos = System.nanoTime();
+
+        private HedgedExecution(RetryHelper.CheckedSupplier<T> operation) {
+            this.operation = operation;
+            result.whenComplete((r, t) -> {
+                for (int i = 0; i < attemptThreads.length(); i++) {
+                    Thread thread = attemptThreads.get(i);
+                    if (thread != null && thread != Thread.currentThread()) {
+                        thread.interrupt();
+                    }
+                }
+            });
+        }
+
+        private void startHedge() {
+            // no token is spent if the first attempt already completed or failed
+            if (result.isDone() || pendingAttempts.get() <= 0) {
+                return;
+            }
+            if (retryBudget != null && !retryBudget.tryAcquireRetry()) {
+                logger.debug("Retry budget exhausted, {} isn't hedged", name);
+                return;
+            }
+            int pending;
+            do {
+                pending = pendingAttempts.get();
+                if (pending <= 0) {
+                    // the first attempt failed in the meantime, the token is given back
+                    if (retryBudget != null) {
+                        retryBudget.releaseRetry();
+                    }
+                    return;
+                }
+            } while (!pendingAttempts.compareAndSet(pending, pending + 1));
+            hedgedExecutions.increment();
+            startAttempt(1);
+        }
+
+        private void startAttempt(int attempt) {
+            try {
+                ATTEMPT_EXECUTOR.execute(() -> runAttempt(attempt));
+            } catch (RejectedExecutionException e) {
+                onFailure(e);
+            }
+        }
+
+        private void runAttempt(int attempt) {
+            attemptThreads.set(attempt, Thread.currentThread());
+            try {
+                if (result.isDone()) {
+                    return;
+                }
+                T value = operation.get();
+                if (!result.isDone()) {
+                    // recorded before the completion, so that the callers observe the updated hedge delay
+                    recordLatency(System.nanoTime() - startNanos);
+                }
+                if (result.complete(value) && attempt > 0) {
+                    hedgeWins.increment();
+                }
+            } catch (Throwable t) {
+                // errors included, as the result would otherwise never be completed
+                onFailure(t);
+            } finally {
+                attemptThreads.set(attempt, null);
+            }
+        }
+
+        private void onFailure(Throwable t) {
+            if (pendingAttempts.decrementAndGet() == 0) {
+                result.completeExceptionally(t);
+            } else if (!(t instanceof CancellationException)) {
+                logger.debug("An attempt of {} failed, waiting for the other attempt", name, t);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HedgedExecutor{name='" + name + "', hedgeDelayMs=" + hedgeDelayMs + "}";
+    }
+}
@@ -0,0 +1,82 @@
+package ch.exense.commons.resilience;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket limiting the retries to a ratio of the requests, to be shared by all callers of a dependency.
+ * <p>
+ * Each request deposits a fraction of a token and each retry withdraws a whole token: once the retries exceed the
+ * configured ratio of the requests, further retries are refused until enough requests have been made. This prevents
+ * retries from multiplying the load of a dependency that is already failing. The bucket is lock-free
+ */
+public class RetryBudget {
+
+    // tokens are stored in thousandths to keep the bucket in a single atomic long
+    private static final long SCALE = 1000;
+
+    private final long depositPerRequest;
+    private final long maxTokens;
+    private final AtomicLong tokens;
+
+    /**
+     * @param retryRatio the maximum ratio of retries per request, for instance 0.1 to allow retries for 10% of the
+     *                   requests
+     * @param maxTokens  the maximum number of retries that can be accumulated, which is also the initial number of
+     *                   available retries
+     */
+    public RetryBudget(double retryRatio, int maxTokens) {
+        if (retryRatio <= 0) {
+            throw new IllegalArgumentException("retryRatio must be greater than 0");
+        }
+        if (maxTokens <= 0) {
+            throw new IllegalArgumentException("maxTokens must be greater than 0");
+        }
+        this.depositPerRequest = Math.max(1, Math.round(retryRatio * SCALE));
+        this.maxTokens = maxTokens * SCALE;
+        this.tokens = new AtomicLong(this.maxTokens);
+    }
+
+    /**
+     * Records a request, which deposits its share of tokens
+     */
+    public void onRequest() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= maxTokens) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(maxTokens, current + depositPerRequest)));
+    }
+
+    /**
+     * @return true if a retry is allowed, in which case a token has been withdrawn
+     */
+    public boolean tryAcquireRetry() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    /**
+     * Gives back a token acquired by {@link #tryAcquireRetry()} for a retry that didn't take place
+     */
+    void releaseRetry() {
+        long current;
+        do {
+            current = tokens.get();
+        } while (!tokens.compareAndSet(current, Math.min(maxTokens, current + SCALE)));
+    }
+
+    /**
+     * @return the number of retries currently available
+     */
+    public double getAvailableRetries() {
+        return (double) tokens.get() / SCALE;
+    }
+}
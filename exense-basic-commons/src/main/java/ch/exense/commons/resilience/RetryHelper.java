@@ -6,13 +6,34 @@ import org.slf4j.LoggerFactory;
 import java.net.*;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class RetryHelper {
 
     private static final Logger logger = LoggerFactory.getLogger(RetryHelper.class);
 
+    /**
+     * Executor of the attempts of the asynchronous retries. The attempts may block, they're therefore executed on
+     * virtual threads
+     */
+    private static final ExecutorService ASYNC_ATTEMPT_EXECUTOR = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("RetryHelper-attempt-", 0).factory());
+
+    /**
+     * Classifiers of the lists of retryable exceptions, bounded as callers may build a new list on each call
+     */
+    private static final int MAX_CACHED_CLASSIFIERS = 64;
+    private static final Map<List<Class<? extends Exception>>, RetryableExceptionClassifier> CLASSIFIERS =
+        new ConcurrentHashMap<>();
+
     /**
      * Common network and IO exceptions that are typically retryable.
      * These represent transient failures that may succeed on retry.
@@ -56,13 +77,44 @@ public class RetryHelper {
         long retryDelayMs,
         List<Class<? extends Exception>> retryableExceptions,
         String operationDescription) throws Exception {
+        return executeWithRetryOnExceptions(operation, maxRetries, BackoffPolicy.fixed(Math.max(0, retryDelayMs)), null,
+            retryableExceptions, operationDescription);
+    }
+
+    /**
+     * Executes an operation with retry logic, using the provided backoff policy and retry budget
+     *
+     * @param operation            the operation to execute
+     * @param maxRetries           maximum number of retry attempts (not including the initial attempt)
+     * @param backoffPolicy        the policy computing the delay before each retry
+     * @param retryBudget          the budget shared by the callers of the operation, null for no budget. Retries
+     *                             refused by the budget propagate the error
+     * @param retryableExceptions  list of exceptions classes for which a retry is allowed
+     * @param operationDescription description of the operation for logging purposes
+     * @param <T>                  the return type of the operation
+     * @return the result of the operation
+     * @throws Exception if the operation fails after all retries, or if the exception is not retryable
+     */
+    public static <T> T executeWithRetryOnExceptions(
+        CheckedSupplier<T> operation,
+        int maxRetries,
+        BackoffPolicy backoffPolicy,
+        RetryBudget retryBudget,
+        List<Class<? extends Exception>> retryableExceptions,
+        String operationDescription) throws Exception {
         Objects.requireNonNull(operation);
+        Objects.requireNonNull(backoffPolicy);
         Objects.requireNonNull(retryableExceptions);
         Objects.requireNonNull(operationDescription);
         if (maxRetries <= 0) {
             throw new IllegalArgumentException("maxRetries must be greater than 0");
         }
+        RetryableExceptionClassifier classifier = classifierFor(retryableExceptions);
+        if (retryBudget != null) {
+            retryBudget.onRequest();
+        }
         Exception lastException = null;
+        long retryDelayMs = 0;
 
         for (int attempt = 0; attempt <= maxRetries; attempt++) {
             try {
@@ -71,8 +123,13 @@ public class RetryHelper {
                 lastException = e;
 
                 // Check if we should retry
-                if (isRetryableException(e, retryableExceptions)) {
-                    if (attempt < maxRetries) {
+                if (classifier.isRetryable(e)) {
+                    if (attempt < maxRetries && retryBudget != null && !retryBudget.tryAcquireRetry()) {
+                        logger.warn("{} failed (attempt {}/{}). Retry budget exhausted, propagating the error...",
+                            operationDescription, attempt + 1, maxRetries + 1, e);
+                        throw e;
+                    } else if (attempt < maxRetries) {
+                        retryDelayMs = backoffPolicy.delayMs(attempt + 1, retryDelayMs);
                         logger.warn("{} failed (attempt {}/{}). Retrying in {}ms...",
                             operationDescription, attempt + 1, maxRetries + 1, retryDelayMs, e);
                         if (retryDelayMs > 0) {
@@ -99,11 +156,208 @@ public class RetryHelper {
         throw lastException;
     }
 
-    private static boolean isRetryableException(Exception e, List<Class<? extends Exception>> retryableExceptions) {
-        // Check the exception itself and its cause
-        return Stream.of(e, e.getCause())
-            .filter(Objects::nonNull)
-            .anyMatch(throwable -> retryableExceptions.stream()
-                .anyMatch(exceptionClass -> exceptionClass.isInstance(throwable)));
+    /**
+     * Executes an operation with retry logic asynchronously. Unlike
+     * {@link #executeWithRetryOnExceptions(CheckedSupplier, int, long, List, String)}, no thread is blocked while
+     * waiting between two attempts: the attempts are executed on virtual threads and the retries are scheduled after
+     * the delay
+     *
+     * @param operation            the operation to execute
+     * @param maxRetries           maximum number of retry attempts (not including the initial attempt)
+     * @param retryDelayMs         delay in milliseconds between retry attempts
+     * @param retryableExceptions  list of exceptions classes for which a retry is allowed
+     * @param operationDescription description of the operation for logging purposes
+     * @param <T>                  the return type of the operation
+     * @return a future completed with the result of the operation, or exceptionally with the last exception if the
+     * operation fails after all retries or if the exception is not retryable
+     */
+    public static <T> CompletableFuture<T> executeWithRetryOnExceptionsAsync(
+        CheckedSupplier<T> operation,
+        int maxRetries,
+        long retryDelayMs,
+        List<Class<? extends Exception>> retryableExceptions,
+        String operationDescription) {
+        return executeWithRetryOnExceptionsAsync(operation, maxRetries, retryDelayMs, retryableExceptions, operationDescription, 0);
+    }
+
+    /**
+     * Executes an operation with retry logic asynchronously within an overall deadline, see
+     * {@link #executeWithRetryOnExceptionsAsync(CheckedSupplier, int, long, List, String)}.
+     * <p>
+     * Cancelling the returned future stops the retries and interrupts the running attempt
+     *
+     * @param operation            the operation to execute
+     * @param maxRetries           maximum number of retry attempts (not including the initial attempt)
+     * @param retryDelayMs         delay in milliseconds between retry attempts
+     * @param retryableExceptions  list of exceptions classes for which a retry is allowed
+     * @param operationDescription description of the operation for logging purposes
+     * @param timeoutMs            the overall timeout in milliseconds including all attempts and delays, 0 for none.
+     *                             The future is completed with a {@link java.util.concurrent.TimeoutException} once
+     *                             elapsed and the running attempt is interrupted
+     * @param <T>                  the return type of the operation
+     * @return a future completed with the result of the operation, or exceptionally with the last exception if the
+     * operation fails after all retries or if the exception is not retryable
+     */
+    public static <T> CompletableFuture<T> executeWithRetryOnExceptionsAsync(
+        CheckedSupplier<T> operation,
+        int maxRetries,
+        long retryDelayMs,
+        List<Class<? extends Exception>> retryableExceptions,
+        String operationDescription,
+        long timeoutMs) {
+        return executeWithRetryOnExceptionsAsync(operation, maxRetries, BackoffPolicy.fixed(Math.max(0, retryDelayMs)), null,
+            retryableExceptions, operationDescription, timeoutMs);
+    }
+
+    /**
+     * Executes an operation with retry logic asynchronously, using the provided backoff policy and retry budget, see
+     * {@link #executeWithRetryOnExceptionsAsync(CheckedSupplier, int, long, List, String, long)}
+     *
+     * @param operation            the operation to execute
+     * @param maxRetries           maximum number of retry attempts (not including the initial attempt)
+     * @param backoffPolicy        the policy computing the delay before each retry
+     * @param retryBudget          the budget shared by the callers of the operation, null for no budget. Retries
+     *                             refused by the budget propagate the error
+     * @param retryableExceptions  list of exceptions classes for which a retry is allowed
+     * @param operationDescription description of the operation for logging purposes
+     * @param timeoutMs            the overall timeout in milliseconds including all attempts and delays, 0 for none
+     * @param <T>                  the return type of the operation
+     * @return a future completed with the result of the operation, or exceptionally with the last exception if the
+     * operation fails after all retries or if the exception is not retryable
+     */
+    public static <T> CompletableFuture<T> executeWithRetryOnExceptionsAsync(
+        CheckedSupplier<T> operation,
+        int maxRetries,
+        BackoffPolicy backoffPolicy,
+        RetryBudget retryBudget,
+        List<Class<? extends Exception>> retryableExceptions,
+        String operationDescription,
+        long timeoutMs) {
+        Objects.requireNonNull(operation);
+        Objects.requireNonNull(backoffPolicy);
+        Objects.requireNonNull(retryableExceptions);
+        Objects.requireNonNull(operationDescription);
+        if (maxRetries <= 0) {
+            throw new IllegalArgumentException("maxRetries must be greater than 0");
+        }
+        if (timeoutMs < 0) {
+            throw new IllegalArgumentException("timeoutMs must be positive");
+        }
+        if (retryBudget != null) {
+            retryBudget.onRequest();
+        }
+        AsyncRetry<T> retry = new AsyncRetry<>(operation, maxRetries, backoffPolicy, retryBudget,
+            classifierFor(retryableExceptions), operationDescription);
+        if (timeoutMs > 0) {
+            retry.result.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        retry.scheduleAttempt(0, 0);
+        return retry.result;
+    }
+
+    /**
+     * State of an asynchronous execution with retries
+     */
+    private static class AsyncRetry<T> {
+
+        private final CheckedSupplier<T> operation;
+        private final int maxRetries;
+        private final BackoffPolicy backoffPolicy;
+        private final RetryBudget retryBudget;
+        private final RetryableExceptionClassifier classifier;
+        private final String operationDescription;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        // the delay applied before the last retry, only accessed by the thread of the current attempt
+        private long retryDelayMs;
+        // the thread running the current attempt, if any
+        private volatile Thread attemptThread;
+
+        private AsyncRetry(CheckedSupplier<T> operation, int maxRetries, BackoffPolicy backoffPolicy, RetryBudget retryBudget,
+                           RetryableExceptionClassifier classifier, String operationDescription) {
+            this.operation = operation;
+            this.maxRetries = maxRetries;
+            this.backoffPolicy = backoffPolicy;
+            this.retryBudget = retryBudget;
+            this.classifier = classifier;
+            this.operationDescription = operationDescription;
+            // interrupt the running attempt if the future is cancelled or times out
+            result.whenComplete((r, t) -> {
+                Thread thread = attemptThread;
+                if (thread != null && thread != Thread.currentThread()) {
+                    thread.interrupt();
+                }
+            });
+        }
+
+        private void scheduleAttempt(int attempt, long delayMs) {
+            Executor executor = delayMs > 0
+                ? CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS, ASYNC_ATTEMPT_EXECUTOR)
+                : ASYNC_ATTEMPT_EXECUTOR;
+            try {
+                executor.execute(() -> runAttempt(attempt));
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void runAttempt(int attempt) {
+            attemptThread = Thread.currentThread();
+            try {
+                if (result.isDone()) {
+                    // cancelled or timed out while waiting for this attempt
+                    return;
+                }
+                result.complete(operation.get());
+            } catch (Exception e) {
+                onFailure(attempt, e);
+            } finally {
+                attemptThread = null;
+            }
+        }
+
+        private void onFailure(int attempt, Exception e) {
+            if (result.isDone()) {
+                return;
+            }
+            if (classifier.isRetryable(e)) {
+                if (attempt < maxRetries && retryBudget != null && !retryBudget.tryAcquireRetry()) {
+                    logger.warn("{} failed (attempt {}/{}). Retry budget exhausted, propagating the error...",
+                        operationDescription, attempt + 1, maxRetries + 1, e);
+                    result.completeExceptionally(e);
+                } else if (attempt < maxRetries) {
+                    retryDelayMs = backoffPolicy.delayMs(attempt + 1, retryDelayMs);
+                    logger.warn("{} failed (attempt {}/{}). Retrying in {}ms...",
+                        operationDescription, attempt + 1, maxRetries + 1, retryDelayMs, e);
+                    scheduleAttempt(attempt + 1, retryDelayMs);
+                } else {
+                    logger.warn("{} failed (attempt {}/{}). Max retries reached, propagating the error...",
+                        operationDescription, attempt + 1, maxRetries + 1, e);
+                    result.completeExceptionally(e);
+                }
+            } else {
+                logger.warn("{} failed (attempt {}/{}). Retries not allowed for this error, propagating the error..",
+                    operationDescription, attempt + 1, maxRetries + 1, e);
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * @return the classifier of the provided exception classes, cached for lists used repeatedly such as
+     * {@link #COMMON_NETWORK_EXCEPTIONS}
+     */
+    static RetryableExceptionClassifier classifierFor(List<Class<? extends Exception>> retryableExceptions) {
+        RetryableExceptionClassifier classifier = CLASSIFIERS.get(retryableExceptions);
+        if (classifier == null) {
+            classifier = RetryableExceptionClassifier.of(retryableExceptions);
+            if (CLASSIFIERS.size() < MAX_CACHED_CLASSIFIERS) {
+                // keyed by the immutable copy of the list, so that later modifications of the list aren't missed
+                RetryableExceptionClassifier existing = CLASSIFIERS.putIfAbsent(classifier.getRetryableExceptions(), classifier);
+                if (existing != null) {
+                    classifier = existing;
+                }
+            }
+        }
+        return classifier;
     }
 }
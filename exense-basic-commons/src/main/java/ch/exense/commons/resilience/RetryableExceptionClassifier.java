@@ -0,0 +1,81 @@
+package ch.exense.commons.resilience;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Classifier telling whether a failure is retryable, precompiled from a list of retryable exception classes.
+ * <p>
+ * A failure is retryable if the exception itself or any exception of its cause chain is an instance of one of the
+ * retryable classes. The result of the lookup is cached per exception class, and the cause chain is walked without
+ * any allocation, so that classifying failures doesn't add garbage during failure storms. Instances are immutable
+ * and meant to be built once and shared
+ */
+public final class RetryableExceptionClassifier {
+
+    // protection against pathological cause chains, cycles being detected separately
+    private static final int MAX_CAUSE_DEPTH = 1024;
+
+    private final List<Class<? extends Exception>> retryableExceptions;
+    private final Class<?>[] retryableClasses;
+    private final ClassValue<Boolean> cache = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            for (Class<?> retryableClass : retryableClasses) {
+                if (retryableClass.isAssignableFrom(type)) {
+                    return Boolean.TRUE;
+                }
+            }
+            return Boolean.FALSE;
+        }
+    };
+
+    private RetryableExceptionClassifier(List<Class<? extends Exception>> retryableExceptions) {
+        this.retryableExceptions = List.copyOf(retryableExceptions);
+        this.retryableClasses = this.retryableExceptions.toArray(new Class<?>[0]);
+    }
+
+    /**
+     * @param retryableExceptions the exception classes for which a retry is allowed
+     * @return a classifier for the provided exception classes
+     */
+    public static RetryableExceptionClassifier of(List<Class<? extends Exception>> retryableExceptions) {
+        return new RetryableExceptionClassifier(Objects.requireNonNull(retryableExceptions));
+    }
+
+    /**
+     * @return the exception classes for which a retry is allowed
+     */
+    public List<Class<? extends Exception>> getRetryableExceptions() {
+        return retryableExceptions;
+    }
+
+    /**
+     * @param throwable the failure to be classified
+     * @return true if the failure or one of its causes is an instance of a retryable exception class
+     */
+    public boolean isRetryable(Throwable throwable) {
+        // the cycles of the cause chain are detected with Floyd's algorithm: the slow pointer advances every second
+        // step and the chain is cyclic if the fast pointer catches up with it
+        Throwable slow = throwable;
+        Throwable current = throwable;
+        for (int depth = 0; current != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            if (cache.get(current.getClass())) {
+                return true;
+            }
+            current = current.getCause();
+            if ((depth & 1) == 1) {
+                slow = slow.getCause();
+                if (slow == current) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryableExceptionClassifier" + retryableExceptions;
+    }
+}
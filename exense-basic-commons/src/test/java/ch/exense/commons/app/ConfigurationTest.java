@@ -15,18 +15,31 @@
  ******************************************************************************/
 package ch.exense.commons.app;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import ch.exense.commons.io.FileHelper;
+import ch.exense.commons.io.FileWatchService;
 
 public class ConfigurationTest {
 
@@ -62,6 +75,97 @@ public class ConfigurationTest {
         }
     }
 
+    @Test
+    public void testUnderlyingPropertyObject() throws IOException {
+        try (Configuration configuration = new Configuration(FileHelper.getClassLoaderResourceAsFile(this.getClass().getClassLoader(), "test.properties"))) {
+            Properties properties = configuration.getUnderlyingPropertyObject();
+            Assert.assertEquals("myProp1", properties.getProperty("my.prop1"));
+            Assert.assertEquals(configuration.getPropertyNames(), properties.keySet());
+
+            // modifications of the view are written through
+            properties.setProperty("my.prop1", "changedProp");
+            Assert.assertEquals("changedProp", configuration.getProperty("my.prop1"));
+            properties.remove("my.prop2");
+            Assert.assertFalse(configuration.hasProperty("my.prop2"));
+
+            configuration.putProperty("my.newProp", "newValue");
+            Assert.assertEquals("newValue", configuration.getUnderlyingPropertyObject().getProperty("my.newProp"));
+            Assert.assertTrue(configuration.getPropertyNames().contains("my.newProp"));
+            // the view is live
+            Assert.assertEquals("newValue", properties.getProperty("my.newProp"));
+
+            // all modifications are written through
+            properties.putIfAbsent("my.absent", "absent");
+            Assert.assertEquals("absent", configuration.getProperty("my.absent"));
+            properties.merge("my.absent", "Merged", (v1, v2) -> (String) v1 + v2);
+            Assert.assertEquals("absentMerged", configuration.getProperty("my.absent"));
+            properties.compute("my.absent", (k, v) -> null);
+            Assert.assertFalse(configuration.hasProperty("my.absent"));
+            properties.replace("my.newProp", "replaced");
+            Assert.assertEquals("replaced", configuration.getProperty("my.newProp"));
+            properties.keySet().remove("my.newProp");
+            Assert.assertFalse(configuration.hasProperty("my.newProp"));
+            for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+                if (entry.getKey().equals("my.prop1")) {
+                    entry.setValue("setValue");
+                }
+            }
+            Assert.assertEquals("setValue", configuration.getProperty("my.prop1"));
+            properties.entrySet().removeIf(entry -> entry.getKey().equals("my.prop1"));
+            Assert.assertFalse(configuration.hasProperty("my.prop1"));
+            Assert.assertEquals(configuration.getPropertyNames(), properties.keySet());
+
+            // the view is serialized as a copy
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(properties);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                Object copy = in.readObject();
+                Assert.assertEquals(Properties.class, copy.getClass());
+                Assert.assertEquals(properties, copy);
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+
+            properties.clear();
+            Assert.assertTrue(configuration.getPropertyNames().isEmpty());
+        }
+    }
+
+    @Test
+    public void testTypedProperties() throws IOException {
+        try (Configuration configuration = new Configuration(FileHelper.getClassLoaderResourceAsFile(this.getClass().getClassLoader(), "test.properties"))) {
+            Configuration.IntProperty intProperty = configuration.intProperty("my.prop2", 0);
+            Configuration.LongProperty longProperty = configuration.longProperty("my.prop5", 0);
+            Configuration.BooleanProperty booleanProperty = configuration.booleanProperty("my.prop3", true);
+            Configuration.FileProperty fileProperty = configuration.fileProperty("my.prop6", null);
+            Assert.assertEquals(1000, intProperty.getAsInt());
+            Assert.assertEquals(100000000000000L, longProperty.getAsLong());
+            Assert.assertFalse(booleanProperty.getAsBoolean());
+            Assert.assertEquals(new File("."), fileProperty.get());
+            // the parsed value is reused as long as the properties don't change
+            Assert.assertSame(fileProperty.get(), fileProperty.get());
+
+            configuration.putProperty("my.prop2", "1001");
+            configuration.putProperty("my.prop3", "true");
+            Assert.assertEquals(1001, intProperty.getAsInt());
+            Assert.assertTrue(booleanProperty.getAsBoolean());
+
+            // default values
+            Assert.assertEquals(5, configuration.intProperty("notExistingProp", 5).getAsInt());
+            Assert.assertEquals(6L, configuration.longProperty("notExistingProp", 6).getAsLong());
+            Assert.assertTrue(configuration.booleanProperty("notExistingProp", true).getAsBoolean());
+            File defaultValue = new File("notExisting");
+            Assert.assertEquals(defaultValue, configuration.fileProperty("notExistingProp", defaultValue).get());
+
+            // the handles are refreshed on reload
+            configuration.load();
+            Assert.assertEquals(1000, intProperty.getAsInt());
+            Assert.assertFalse(booleanProperty.getAsBoolean());
+        }
+    }
+
     @Test
     public void testScan() throws IOException, InterruptedException {
         File propertyFile = FileHelper.createTempFile();
@@ -84,6 +188,207 @@ public class ConfigurationTest {
         }
     }
 
+    @Test
+    public void testLayers() throws IOException {
+        File baseFile = FileHelper.createTempFile();
+        Files.write(baseFile.toPath(), "my.prop1=base\nmy.prop2=base\nmy.prop3=${myPlaceholder}\n".getBytes());
+        Map<String, String> layer = new HashMap<>();
+        layer.put("my.prop2", "map");
+        layer.put("my.prop4", "map");
+        System.setProperty("ConfigurationTest.prop", "system");
+        Map<String, String> placeholders = new HashMap<>();
+        placeholders.put("myplaceholder", "placeholder");
+        try (Configuration configuration = new Configuration(List.of(ConfigurationSource.file(baseFile), ConfigurationSource.map(layer),
+                ConfigurationSource.systemProperties(), ConfigurationSource.environmentVariables()), placeholders)) {
+            Assert.assertEquals("base", configuration.getProperty("my.prop1"));
+            Assert.assertEquals("map", configuration.getProperty("my.prop2"));
+            Assert.assertEquals("placeholder", configuration.getProperty("my.prop3"));
+            Assert.assertEquals("map", configuration.getProperty("my.prop4"));
+            Assert.assertEquals("system", configuration.getProperty("ConfigurationTest.prop"));
+            Assert.assertEquals(baseFile, configuration.getPropertyFile());
+            Assert.assertEquals(4, configuration.getSources().size());
+
+            // properties set explicitly override all layers until the next load
+            configuration.putProperty("my.prop2", "override");
+            Assert.assertEquals("override", configuration.getProperty("my.prop2"));
+            layer.put("my.prop4", "newValue");
+            configuration.load();
+            Assert.assertEquals("map", configuration.getProperty("my.prop2"));
+            Assert.assertEquals("newValue", configuration.getProperty("my.prop4"));
+        } finally {
+            System.clearProperty("ConfigurationTest.prop");
+            baseFile.delete();
+        }
+    }
+
+    @Test
+    public void testLayerScan() throws IOException, InterruptedException {
+        File baseFile = FileHelper.createTempFile();
+        File environmentFile = FileHelper.createTempFile();
+        Files.write(baseFile.toPath(), "conf.scan=true\nmy.prop1=base\nmy.prop2=base\n".getBytes());
+        Files.write(environmentFile.toPath(), "my.prop2=environment\n".getBytes());
+        try (Configuration configuration = new Configuration(List.of(ConfigurationSource.file(baseFile), ConfigurationSource.file(environmentFile)), new HashMap<>())) {
+            Assert.assertEquals("environment", configuration.getProperty("my.prop2"));
+            configuration.putProperty("my.prop3", "override");
+
+            Thread.sleep(1000);
+            Files.write(environmentFile.toPath(), "my.prop1=environment\n".getBytes());
+            Thread.sleep(2000);
+
+            // only the modified layer is reloaded, the explicitly set properties are kept
+            Assert.assertEquals("environment", configuration.getProperty("my.prop1"));
+            Assert.assertEquals("base", configuration.getProperty("my.prop2"));
+            Assert.assertEquals("override", configuration.getProperty("my.prop3"));
+        } finally {
+            baseFile.delete();
+            environmentFile.delete();
+        }
+    }
+
+    @Test
+    public void testConcurrentReloads() throws IOException, InterruptedException {
+        File file = FileHelper.createTempFile();
+        Files.write(file.toPath(), "conf.scan=true\nmy.prop=1\n".getBytes());
+        CountDownLatch readDone = new CountDownLatch(1);
+        CountDownLatch publishAllowed = new CountDownLatch(1);
+        AtomicBoolean blockNextLoad = new AtomicBoolean();
+        ConfigurationSource source = new ConfigurationSource() {
+            private final ConfigurationSource delegate = ConfigurationSource.file(file);
+
+            @Override
+            public File getFile() {
+                return file;
+            }
+
+            @Override
+            public Map<String, String> load(Map<String, String> placeholders) throws IOException {
+                Map<String, String> properties = delegate.load(placeholders);
+                if (blockNextLoad.compareAndSet(true, false)) {
+                    readDone.countDown();
+                    try {
+                        publishAllowed.await();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                return properties;
+            }
+        };
+        try (FileWatchService fileWatchService = new FileWatchService();
+             Configuration configuration = new Configuration(List.of(source), new HashMap<>(), fileWatchService)) {
+            fileWatchService.setInterval(10);
+            Thread.sleep(500);
+
+            // a reload reading the file before its modification and publishing after the reload of the modified file
+            blockNextLoad.set(true);
+            Thread load = new Thread(() -> {
+                try {
+                    configuration.load();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            load.start();
+            Assert.assertTrue(readDone.await(5, TimeUnit.SECONDS));
+            Files.write(file.toPath(), "conf.scan=true\nmy.prop=2\n".getBytes());
+            file.setLastModified(System.currentTimeMillis() + 10000);
+            Thread.sleep(1000);
+            publishAllowed.countDown();
+            load.join(5000);
+
+            // the latest content of the file wins
+            long timeout = System.currentTimeMillis() + 5000;
+            while (!"2".equals(configuration.getProperty("my.prop")) && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(500);
+            Assert.assertEquals("2", configuration.getProperty("my.prop"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testChangeListeners() throws IOException {
+        File file = FileHelper.createTempFile();
+        Files.write(file.toPath(), "my.prop1=value1\nmy.prop2=value2\nother.prop=value\n".getBytes());
+        try (Configuration configuration = new Configuration(file)) {
+            List<Set<String>> keyNotifications = new ArrayList<>();
+            List<Set<String>> prefixNotifications = new ArrayList<>();
+            Configuration.ChangeListener keyListener = (c, keys) -> keyNotifications.add(keys);
+            configuration.addChangeListener("my.prop1", keyListener);
+            configuration.addPrefixChangeListener("my.", (c, keys) -> prefixNotifications.add(keys));
+
+            configuration.putProperty("my.prop1", "changed");
+            Assert.assertEquals(List.of(Set.of("my.prop1")), keyNotifications);
+            Assert.assertEquals(List.of(Set.of("my.prop1")), prefixNotifications);
+
+            // setting the same value or a property outside of the subscriptions doesn't notify
+            configuration.putProperty("my.prop1", "changed");
+            configuration.putProperty("other.prop", "changed");
+            Assert.assertEquals(1, keyNotifications.size());
+            Assert.assertEquals(1, prefixNotifications.size());
+
+            // reload: the overrides are discarded and the modified file is read again
+            Files.write(file.toPath(), "my.prop1=value1\nmy.prop3=value3\nother.prop=value\n".getBytes());
+            configuration.load();
+            Assert.assertEquals(2, keyNotifications.size());
+            Assert.assertEquals(Set.of("my.prop1", "my.prop2", "my.prop3"), prefixNotifications.get(1));
+
+            configuration.removeChangeListener(keyListener);
+            configuration.putProperty("my.prop1", "changed");
+            Assert.assertEquals(2, keyNotifications.size());
+            Assert.assertEquals(3, prefixNotifications.size());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSnapshotFile() throws IOException {
+        File file = FileHelper.createTempFile();
+        File folder = FileHelper.createTempFolder();
+        File snapshotFile = new File(folder, "snapshot.bin");
+        Files.write(file.toPath(), "my.prop1=${myPlaceholder}\nmy.prop2=value2\n".getBytes());
+        Map<String, String> placeholders = new HashMap<>();
+        placeholders.put("myplaceholder", "value1");
+        try {
+            try (Configuration configuration = new Configuration(List.of(ConfigurationSource.file(file, snapshotFile)), placeholders)) {
+                Assert.assertEquals("value1", configuration.getProperty("my.prop1"));
+                Assert.assertTrue(snapshotFile.exists());
+            }
+
+            // the snapshot is used as long as the source is unchanged
+            snapshotFile.setLastModified(0);
+            try (Configuration configuration = new Configuration(List.of(ConfigurationSource.file(file, snapshotFile)), placeholders)) {
+                Assert.assertEquals("value1", configuration.getProperty("my.prop1"));
+                Assert.assertEquals("value2", configuration.getProperty("my.prop2"));
+                Assert.assertEquals(0, snapshotFile.lastModified());
+            }
+
+            // a modification of the placeholders or of the file makes the snapshot stale
+            placeholders.put("myplaceholder", "newValue");
+            try (Configuration configuration = new Configuration(List.of(ConfigurationSource.file(file, snapshotFile)), placeholders)) {
+                Assert.assertEquals("newValue", configuration.getProperty("my.prop1"));
+            }
+            Files.write(file.toPath(), "my.prop1=changed\n".getBytes());
+            try (Configuration configuration = new Configuration(List.of(ConfigurationSource.file(file, snapshotFile)), placeholders)) {
+                Assert.assertEquals("changed", configuration.getProperty("my.prop1"));
+                Assert.assertNull(configuration.getProperty("my.prop2"));
+            }
+
+            // a corrupted snapshot is rebuilt
+            Files.write(snapshotFile.toPath(), new byte[]{1, 2, 3});
+            try (Configuration configuration = new Configuration(List.of(ConfigurationSource.file(file, snapshotFile)), placeholders)) {
+                Assert.assertEquals("changed", configuration.getProperty("my.prop1"));
+            }
+            Assert.assertTrue(snapshotFile.length() > 3);
+        } finally {
+            file.delete();
+            FileHelper.deleteFolder(folder);
+        }
+    }
+
     @Test
     public void testPlaceholder() throws IOException {
         ArgumentParser argumentParser = new ArgumentParser(new String[]{"-myPlaceholder=myPlaceholdersValue"});
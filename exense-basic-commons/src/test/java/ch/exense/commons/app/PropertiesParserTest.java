@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright 2021 exense GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package ch.exense.commons.app;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PropertiesParserTest {
+
+    @Test
+    public void testFormat() throws IOException {
+        String content = "# comment\n" +
+                "! other comment with a ${missing} placeholder\n" +
+                "\n" +
+                "   key1 = value1\n" +
+                "key2:value2\r\n" +
+                "key3 value3\r" +
+                "key\\ 4=value\\t4\\u0041\n" +
+                "key5=multi \\\n" +
+                "      line \\\r\n" +
+                "   value\n" +
+                "key6=\\\\\n" +
+                "key7\n" +
+                "key8=#not a comment\n" +
+                "key1=overridden\n" +
+                "key9=end";
+        Properties expected = new Properties();
+        expected.load(new StringReader(content.replace("${missing}", "")));
+        Map<String, String> actual = new PropertiesParser(new HashMap<>()).parse(new StringReader(content));
+        Assert.assertEquals(expected, toProperties(actual));
+        Assert.assertEquals("overridden", actual.get("key1"));
+        Assert.assertEquals("multi line value", actual.get("key5"));
+    }
+
+    @Test
+    public void testLongLines() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append("key").append(i).append('=').append("value".repeat(i)).append('\n');
+        }
+        Properties expected = new Properties();
+        expected.load(new StringReader(content.toString()));
+        Map<String, String> actual = new PropertiesParser(new HashMap<>()).parse(new StringReader(content.toString()));
+        Assert.assertEquals(expected, toProperties(actual));
+    }
+
+    @Test
+    public void testPlaceholders() throws IOException {
+        Map<String, String> placeholders = new HashMap<>();
+        placeholders.put("env", "prod");
+        placeholders.put("db.prod.url", "jdbc:prod");
+        placeholders.put("path", "C:\\temp");
+        placeholders.put("prefix", "my");
+        String content = "url=${db.${env}.url}\n" +
+                "default=${notDefined:default}\n" +
+                "nestedDefault=${notDefined:${env}-${other:x}}\n" +
+                "usedValue=${env:default}\n" +
+                "uppercase=${ENV}\n" +
+                "path=${path}\\\\bin\n" +
+                "${prefix}.key=value\n" +
+                "unterminated=${env\n" +
+                "empty=${}";
+        Map<String, String> properties = new PropertiesParser(placeholders).parse(new StringReader(content));
+        Assert.assertEquals("jdbc:prod", properties.get("url"));
+        Assert.assertEquals("default", properties.get("default"));
+        Assert.assertEquals("prod-x", properties.get("nestedDefault"));
+        Assert.assertEquals("prod", properties.get("usedValue"));
+        Assert.assertEquals("prod", properties.get("uppercase"));
+        // values of placeholders aren't interpreted as escapes
+        Assert.assertEquals("C:\\temp\\bin", properties.get("path"));
+        Assert.assertEquals("value", properties.get("my.key"));
+        Assert.assertEquals("${env", properties.get("unterminated"));
+        Assert.assertEquals("${}", properties.get("empty"));
+    }
+
+    @Test
+    public void testMissingPlaceholder() throws IOException {
+        try {
+            new PropertiesParser(new HashMap<>()).parse(new StringReader("key=${missing}"));
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertEquals("Missing placeholder 'missing'.", e.getMessage());
+        }
+    }
+
+    private static Properties toProperties(Map<String, String> map) {
+        Properties properties = new Properties();
+        properties.putAll(map);
+        return properties;
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2021 exense GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package ch.exense.commons.app;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PropertySnapshotTest {
+
+    @Test
+    public void test() {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            map.put("key" + i, "value" + i);
+        }
+        PropertySnapshot snapshot = PropertySnapshot.of(map);
+        Assert.assertEquals(1000, snapshot.size());
+        Assert.assertEquals(map, snapshot.toMap());
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals("value" + i, snapshot.get("key" + i));
+        }
+        Assert.assertNull(snapshot.get("key1000"));
+        Assert.assertEquals(map.keySet(), snapshot.getNames());
+
+        PropertySnapshot newSnapshot = snapshot.with("key1", "newValue").with("newKey", "value");
+        Assert.assertEquals("newValue", newSnapshot.get("key1"));
+        Assert.assertEquals("value", newSnapshot.get("newKey"));
+        Assert.assertEquals(1001, newSnapshot.size());
+        // the initial snapshot is unchanged
+        Assert.assertEquals("value1", snapshot.get("key1"));
+        Assert.assertNull(snapshot.get("newKey"));
+        Assert.assertSame(newSnapshot, newSnapshot.with("key1", "newValue"));
+
+        PropertySnapshot removed = newSnapshot.without("key1");
+        Assert.assertNull(removed.get("key1"));
+        Assert.assertEquals(1000, removed.size());
+        Assert.assertEquals("value2", removed.get("key2"));
+    }
+
+    @Test
+    public void testGrowth() {
+        PropertySnapshot snapshot = PropertySnapshot.EMPTY;
+        Assert.assertNull(snapshot.get("key"));
+        for (int i = 0; i < 100; i++) {
+            snapshot = snapshot.with("key" + i, "value" + i);
+            Assert.assertEquals(i + 1, snapshot.size());
+        }
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("value" + i, snapshot.get("key" + i));
+        }
+    }
+
+    @Test
+    public void testDiff() {
+        PropertySnapshot snapshot = PropertySnapshot.EMPTY.with("key1", "value1").with("key2", "value2").with("key3", "value3");
+        PropertySnapshot newSnapshot = snapshot.with("key1", "changed").without("key2").with("key4", "value4");
+        Assert.assertEquals(Set.of("key1", "key2", "key4"), snapshot.diff(newSnapshot));
+        Assert.assertEquals(Set.of("key1", "key2", "key4"), newSnapshot.diff(snapshot));
+        Assert.assertTrue(snapshot.diff(snapshot).isEmpty());
+    }
+}
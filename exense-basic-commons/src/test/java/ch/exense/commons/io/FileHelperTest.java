@@ -22,6 +22,11 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import ch.exense.commons.classloader.ClassLoaderArchiver;
 import org.junit.Assert;
@@ -185,6 +190,171 @@ public class FileHelperTest {
 		assertFalse(targetDir.toFile().exists());
 	}
 
+	@Test
+	public void testUnzipWithMemoryBudget() throws Exception {
+		Path sourceDir = Files.createTempDirectory(null);
+		Files.write(sourceDir.resolve("small.txt"), "SMALL".getBytes());
+		Files.write(sourceDir.resolve("empty.txt"), new byte[0]);
+		Path subDir = sourceDir.resolve("subdir");
+		subDir.toFile().mkdirs();
+		byte[] largeContent = new byte[300 * 1024];
+		new Random(0).nextBytes(largeContent);
+		Files.write(subDir.resolve("large.bin"), largeContent);
+
+		byte[] zip = FileHelper.zip(sourceDir.toFile());
+		FileHelper.deleteFolder(sourceDir.toFile());
+
+		// 0: no parallel writes, 1024: large entry exceeds the budget, default: everything fits
+		for (long budget : new long[]{0, 1024, FileHelper.DEFAULT_UNZIP_MAX_IN_FLIGHT_BYTES}) {
+			Path targetDir = Files.createTempDirectory(null);
+			FileHelper.unzip(new ByteArrayInputStream(zip), targetDir.toFile(), o -> true, budget);
+
+			assertEquals("SMALL", new String(Files.readAllBytes(targetDir.resolve("small.txt"))));
+			assertEquals(0, Files.size(targetDir.resolve("empty.txt")));
+			assertArrayEquals(largeContent, Files.readAllBytes(targetDir.resolve("subdir/large.bin")));
+
+			FileHelper.deleteFolder(targetDir.toFile());
+		}
+	}
+
+	@Test
+	public void testUnzipInParallel() throws Exception {
+		Path sourceDir = Files.createTempDirectory(null);
+		for (int i = 0; i < 50; i++) {
+			Path dir = sourceDir.resolve("dir" + (i % 5));
+			dir.toFile().mkdirs();
+			Files.write(dir.resolve("file" + i + ".txt"), ("CONTENT_" + i).getBytes());
+		}
+		File zipFile = FileHelper.createTempFile();
+		FileHelper.zip(sourceDir.toFile(), zipFile);
+		FileHelper.deleteFolder(sourceDir.toFile());
+
+		for (int parallelism : new int[]{1, 4}) {
+			Path targetDir = Files.createTempDirectory(null);
+			FileHelper.unzip(zipFile, targetDir.toFile(), o -> true, parallelism);
+			for (int i = 0; i < 50; i++) {
+				assertEquals("CONTENT_" + i, new String(Files.readAllBytes(targetDir.resolve("dir" + (i % 5) + "/file" + i + ".txt"))));
+			}
+			FileHelper.deleteFolder(targetDir.toFile());
+		}
+		assertTrue(zipFile.delete());
+	}
+
+	@Test
+	public void testUnzipDuplicateEntries() throws Exception {
+		byte[] firstContent = new byte[300 * 1024];
+		new Random(0).nextBytes(firstContent);
+		File zipFile = FileHelper.createTempFile();
+		try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile))) {
+			// Distinct names resolving to the same file
+			zos.putNextEntry(new ZipEntry("dup.txt"));
+			zos.write(firstContent);
+			zos.putNextEntry(new ZipEntry("subdir/../dup.txt"));
+			zos.write("LAST".getBytes());
+		}
+
+		// The last entry wins, whatever the order in which the entries are written
+		for (long budget : new long[]{0, 1024, FileHelper.DEFAULT_UNZIP_MAX_IN_FLIGHT_BYTES}) {
+			Path targetDir = Files.createTempDirectory(null);
+			FileHelper.unzip(new FileInputStream(zipFile), targetDir.toFile(), o -> true, budget);
+			assertEquals("LAST", new String(Files.readAllBytes(targetDir.resolve("dup.txt"))));
+			FileHelper.deleteFolder(targetDir.toFile());
+		}
+		Path targetDir = Files.createTempDirectory(null);
+		FileHelper.unzip(zipFile, targetDir.toFile(), o -> true, 4);
+		assertEquals("LAST", new String(Files.readAllBytes(targetDir.resolve("dup.txt"))));
+		FileHelper.deleteFolder(targetDir.toFile());
+		assertTrue(zipFile.delete());
+	}
+
+	@Test
+	public void testUnzipRejectsEntriesOutsideOfTarget() throws Exception {
+		File zipFile = FileHelper.createTempFile();
+		try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile))) {
+			zos.putNextEntry(new ZipEntry("valid.txt"));
+			zos.write("VALID".getBytes());
+			zos.putNextEntry(new ZipEntry("subdir/valid.txt"));
+			zos.write("VALID".getBytes());
+			zos.putNextEntry(new ZipEntry("existing.txt"));
+			zos.write("VALID".getBytes());
+			zos.putNextEntry(new ZipEntry("../evil.txt"));
+			zos.write("EVIL".getBytes());
+		}
+
+		Path targetDir = Files.createTempDirectory(null);
+		Files.write(targetDir.resolve("existing.txt"), "EXISTING".getBytes());
+		IOException e = assertThrows(IOException.class, () -> FileHelper.unzip(zipFile, targetDir.toFile()));
+		assertTrue(e.getMessage().startsWith("ZIP entry outside of target directory"));
+		// Entries are validated from the central directory before anything is written
+		assertFalse(targetDir.resolve("valid.txt").toFile().exists());
+		assertEquals("EXISTING", new String(Files.readAllBytes(targetDir.resolve("existing.txt"))));
+
+		// Entries are validated while being streamed, what has been created before the invalid entry is deleted
+		e = assertThrows(IOException.class, () -> FileHelper.unzip(new FileInputStream(zipFile), targetDir.toFile()));
+		assertTrue(e.getMessage().startsWith("ZIP entry outside of target directory"));
+		assertFalse(targetDir.getParent().resolve("evil.txt").toFile().exists());
+		assertFalse(targetDir.resolve("valid.txt").toFile().exists());
+		assertFalse(targetDir.resolve("subdir").toFile().exists());
+		assertTrue(targetDir.resolve("existing.txt").toFile().exists());
+
+		FileHelper.deleteFolder(targetDir.toFile());
+		assertTrue(zipFile.delete());
+	}
+
+	@Test
+	public void testZipInParallel() throws Exception {
+		Path sourceDir = Files.createTempDirectory(null);
+		for (int i = 0; i < 20; i++) {
+			Path dir = sourceDir.resolve("dir" + (i % 3));
+			dir.toFile().mkdirs();
+			Files.write(dir.resolve("file" + i + ".txt"), ("CONTENT_" + i).getBytes());
+		}
+		sourceDir.resolve("emptyDir").toFile().mkdirs();
+		// larger than the spill threshold once compressed
+		byte[] largeContent = new byte[2 * 1024 * 1024];
+		new Random(0).nextBytes(largeContent);
+		Files.write(sourceDir.resolve("large.bin"), largeContent);
+
+		for (int level : new int[]{ZipOutputStream.STORED, Deflater.DEFAULT_COMPRESSION}) {
+			ByteArrayOutputStream out1 = new ByteArrayOutputStream();
+			FileHelper.zip(sourceDir.toFile(), out1, null, level, 1);
+			ByteArrayOutputStream out4 = new ByteArrayOutputStream();
+			FileHelper.zip(sourceDir.toFile(), out4, null, level, 4);
+			// the archive doesn't depend on the parallelism
+			assertArrayEquals(out1.toByteArray(), out4.toByteArray());
+
+			File zipFile = FileHelper.createTempFile();
+			Files.write(zipFile.toPath(), out4.toByteArray());
+			try (ZipFile zip = new ZipFile(zipFile)) {
+				assertEquals(25, zip.size());
+				assertTrue(zip.getEntry("emptyDir/").isDirectory());
+			}
+
+			Path targetDir = Files.createTempDirectory(null);
+			FileHelper.unzip(zipFile, targetDir.toFile());
+			for (int i = 0; i < 20; i++) {
+				assertEquals("CONTENT_" + i, new String(Files.readAllBytes(targetDir.resolve("dir" + (i % 3) + "/file" + i + ".txt"))));
+			}
+			assertArrayEquals(largeContent, Files.readAllBytes(targetDir.resolve("large.bin")));
+			FileHelper.deleteFolder(targetDir.toFile());
+
+			targetDir = Files.createTempDirectory(null);
+			FileHelper.unzip(new ByteArrayInputStream(out4.toByteArray()), targetDir.toFile());
+			assertArrayEquals(largeContent, Files.readAllBytes(targetDir.resolve("large.bin")));
+			FileHelper.deleteFolder(targetDir.toFile());
+			assertTrue(zipFile.delete());
+		}
+
+		File zipFile = FileHelper.createTempFile();
+		FileHelper.zip(sourceDir.toFile(), zipFile, f -> !f.getName().equals("large.bin"), 2);
+		try (ZipFile zip = new ZipFile(zipFile)) {
+			assertEquals(24, zip.size());
+			assertNull(zip.getEntry("large.bin"));
+		}
+		assertTrue(zipFile.delete());
+		FileHelper.deleteFolder(sourceDir.toFile());
+	}
+
 	@Test
 	public void test2() throws IOException {
 		String readResource = FileHelper.readResource(getClass(), "testFile.txt");
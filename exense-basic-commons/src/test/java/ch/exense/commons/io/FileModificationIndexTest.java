@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2021 exense GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package ch.exense.commons.io;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FileModificationIndexTest {
+
+    @Test
+    public void testDirectory() throws IOException {
+        File root = FileHelper.createTempFolder();
+        File subFolder = new File(root, "subFolder");
+        assertTrue(subFolder.mkdirs());
+        File file = new File(subFolder, "file.txt");
+        Files.write(file.toPath(), "TEST".getBytes());
+
+        // set all dates in the past so that the listings of the index are trusted
+        long t0 = System.currentTimeMillis() - 100_000;
+        setLastModified(t0, root, subFolder, file);
+
+        FileModificationIndex index = new FileModificationIndex();
+        assertEquals(t0, index.getLastModificationDateRecursive(root));
+        assertEquals(FileHelper.getLastModificationDateRecursive(root), index.getLastModificationDateRecursive(root));
+
+        // modification of the content of a file doesn't change the date of its directory
+        file.setLastModified(t0 + 10_000);
+        assertEquals(t0 + 10_000, index.getLastModificationDateRecursive(root));
+
+        // new file in a sub folder
+        File newFile = new File(subFolder, "newFile.txt");
+        Files.write(newFile.toPath(), "TEST".getBytes());
+        setLastModified(t0 + 20_000, newFile, subFolder);
+        assertEquals(t0 + 20_000, index.getLastModificationDateRecursive(root));
+
+        // deleted file
+        assertTrue(newFile.delete());
+        subFolder.setLastModified(t0 + 30_000);
+        assertEquals(t0 + 30_000, index.getLastModificationDateRecursive(root));
+        assertEquals(FileHelper.getLastModificationDateRecursive(root), index.getLastModificationDateRecursive(root));
+
+        index.remove(root);
+        assertEquals(t0 + 30_000, index.getLastModificationDateRecursive(root));
+
+        FileHelper.deleteFolder(root);
+        assertEquals(0, index.getLastModificationDateRecursive(root));
+    }
+
+    @Test
+    public void testFile() throws IOException {
+        File file = FileHelper.createTempFile();
+        file.setLastModified(10_000);
+
+        FileModificationIndex index = new FileModificationIndex();
+        assertEquals(10_000, index.getLastModificationDateRecursive(file));
+        file.setLastModified(20_000);
+        assertEquals(20_000, index.getLastModificationDateRecursive(file));
+
+        assertTrue(file.delete());
+        assertEquals(0, index.getLastModificationDateRecursive(file));
+    }
+
+    private static void setLastModified(long time, File... files) {
+        for (File file : files) {
+            assertTrue(file.setLastModified(time));
+        }
+    }
+}
@@ -26,7 +26,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ConcurrentModificationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -63,6 +68,309 @@ public class FileWatchServiceTest {
         fileWatchService.close();
     }
 
+    @Test
+    public void testDirectory() throws InterruptedException, IOException {
+        testDirectory(true);
+        testDirectory(false);
+    }
+
+    private void testDirectory(boolean nativeEvents) throws InterruptedException, IOException {
+        File folder = FileHelper.createTempFolder();
+        try (FileWatchService fileWatchService = new FileWatchService(nativeEvents)) {
+            fileWatchService.setInterval(10);
+            Object lock = new Object();
+            final AtomicInteger updatedCount = new AtomicInteger(0);
+            fileWatchService.register(folder, () -> {
+                synchronized (lock) {
+                    updatedCount.incrementAndGet();
+                    lock.notify();
+                }
+            });
+
+            // file created in a new sub folder
+            File subFolder = new File(folder, "subFolder");
+            Assert.assertTrue(subFolder.mkdirs());
+            File file = new File(subFolder, "file.txt");
+            Files.write(file.toPath(), "TEST".getBytes());
+            waitForUpdate(lock, updatedCount, 1);
+
+            // modification of a file in the sub folder
+            touchAndWait(file, lock, updatedCount, 2, System.currentTimeMillis() + 10000);
+        } finally {
+            FileHelper.deleteFolder(folder);
+        }
+    }
+
+    @Test
+    public void testAsynchronousCallbacks() throws InterruptedException, IOException {
+        File slowFile = FileHelper.createTempFile();
+        File file = FileHelper.createTempFile();
+        try (FileWatchService fileWatchService = new FileWatchService()) {
+            fileWatchService.setInterval(10);
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger slowCount = new AtomicInteger();
+            AtomicInteger concurrentCalls = new AtomicInteger();
+            AtomicInteger maxConcurrentCalls = new AtomicInteger();
+            fileWatchService.register(slowFile, () -> {
+                maxConcurrentCalls.accumulateAndGet(concurrentCalls.incrementAndGet(), Math::max);
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    concurrentCalls.decrementAndGet();
+                    slowCount.incrementAndGet();
+                }
+            });
+            Object lock = new Object();
+            final AtomicInteger updatedCount = new AtomicInteger(0);
+            fileWatchService.register(file, () -> {
+                synchronized (lock) {
+                    updatedCount.incrementAndGet();
+                    lock.notify();
+                }
+            });
+
+            // the blocked callback of the first file doesn't delay the callback of the second one
+            long now = System.currentTimeMillis();
+            slowFile.setLastModified(now + 10000);
+            Thread.sleep(200);
+            slowFile.setLastModified(now + 20000);
+            Thread.sleep(200);
+            slowFile.setLastModified(now + 30000);
+            touchAndWait(file, lock, updatedCount, 1, now + 10000);
+            Assert.assertEquals(1, fileWatchService.getPendingCallbackCount());
+
+            // the modifications detected while the callback was running result in a single further call
+            release.countDown();
+            Thread.sleep(500);
+            Assert.assertEquals(2, slowCount.get());
+            Assert.assertEquals(1, maxConcurrentCalls.get());
+            Assert.assertEquals(0, fileWatchService.getPendingCallbackCount());
+            Assert.assertEquals(3, fileWatchService.getExecutedCallbackCount());
+            Assert.assertTrue(fileWatchService.getMaxCallbackDurationMs() >= fileWatchService.getAverageCallbackDurationMs());
+        } finally {
+            slowFile.delete();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testDebounce() throws InterruptedException, IOException {
+        File folder = FileHelper.createTempFolder();
+        try (FileWatchService fileWatchService = new FileWatchService()) {
+            fileWatchService.setInterval(10);
+            AtomicInteger updatedCount = new AtomicInteger();
+            fileWatchService.register(folder, updatedCount::incrementAndGet, false, 500, 0);
+
+            // a burst of modifications results in a single call once the folder has settled
+            writeFiles(folder, "file", 20, 50);
+            Assert.assertEquals(0, updatedCount.get());
+            Thread.sleep(1000);
+            Assert.assertEquals(1, updatedCount.get());
+
+            // the maximum delay bounds the time between the first modification and the call
+            AtomicInteger boundedCount = new AtomicInteger();
+            fileWatchService.register(folder, boundedCount::incrementAndGet, false, 500, 300);
+            writeFiles(folder, "otherFile", 20, 50);
+            Assert.assertTrue(boundedCount.get() >= 2);
+        } finally {
+            FileHelper.deleteFolder(folder);
+        }
+    }
+
+    private void writeFiles(File folder, String prefix, int count, long period) throws IOException, InterruptedException {
+        for (int i = 0; i < count; i++) {
+            Files.write(new File(folder, prefix + i).toPath(), "TEST".getBytes());
+            Thread.sleep(period);
+        }
+    }
+
+    @Test
+    public void testSubscriptions() throws InterruptedException, IOException {
+        File file = FileHelper.createTempFile();
+        try (FileWatchService fileWatchService = new FileWatchService()) {
+            fileWatchService.setInterval(10);
+            AtomicInteger registeredCount = new AtomicInteger();
+            AtomicInteger count1 = new AtomicInteger();
+            AtomicInteger count2 = new AtomicInteger();
+            fileWatchService.register(file, registeredCount::incrementAndGet);
+            FileWatchService.Registration registration1 = fileWatchService.subscribe(file, count1::incrementAndGet, false);
+            FileWatchService.Registration registration2 = fileWatchService.subscribe(file, count2::incrementAndGet, false);
+
+            long now = System.currentTimeMillis();
+            file.setLastModified(now + 10000);
+            Thread.sleep(500);
+            Assert.assertEquals(1, registeredCount.get());
+            Assert.assertEquals(1, count1.get());
+            Assert.assertEquals(1, count2.get());
+
+            // unregistering doesn't affect the subscriptions
+            fileWatchService.unregister(file);
+            registration1.close();
+            file.setLastModified(now + 20000);
+            Thread.sleep(500);
+            Assert.assertEquals(1, registeredCount.get());
+            Assert.assertEquals(1, count1.get());
+            Assert.assertEquals(2, count2.get());
+
+            registration2.close();
+            file.setLastModified(now + 30000);
+            Thread.sleep(500);
+            Assert.assertEquals(2, count2.get());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testEquivalentPaths() throws InterruptedException, IOException {
+        File folder = FileHelper.createTempFolder();
+        File file = new File(folder, "file.txt");
+        Files.writeString(file.toPath(), "content");
+        Assert.assertTrue(new File(folder, "sub").mkdir());
+        try (FileWatchService fileWatchService = new FileWatchService()) {
+            fileWatchService.setInterval(10);
+            AtomicInteger count1 = new AtomicInteger();
+            AtomicInteger count2 = new AtomicInteger();
+            fileWatchService.register(new File(folder, "./file.txt"), count1::incrementAndGet);
+            // the paths of the same file share the registration, which is replaced
+            fileWatchService.register(new File(folder, "sub/../file.txt"), count2::incrementAndGet);
+
+            long now = System.currentTimeMillis();
+            file.setLastModified(now + 10000);
+            Thread.sleep(500);
+            Assert.assertEquals(0, count1.get());
+            Assert.assertEquals(1, count2.get());
+
+            fileWatchService.unregister(file.getAbsoluteFile());
+            file.setLastModified(now + 20000);
+            Thread.sleep(500);
+            Assert.assertEquals(1, count2.get());
+        } finally {
+            FileHelper.deleteFolder(folder);
+        }
+    }
+
+    @Test
+    public void testWatchedFolderRecreated() throws InterruptedException, IOException {
+        File root = FileHelper.createTempFolder();
+        File folder = new File(root, "folder");
+        File parent = new File(root, "parent");
+        File file = new File(parent, "file.txt");
+        Assert.assertTrue(folder.mkdir());
+        Assert.assertTrue(parent.mkdir());
+        Files.write(file.toPath(), "TEST".getBytes());
+        try (FileWatchService fileWatchService = new FileWatchService(true)) {
+            fileWatchService.setInterval(10);
+            AtomicInteger folderCount = new AtomicInteger();
+            AtomicInteger fileCount = new AtomicInteger();
+            fileWatchService.register(folder, folderCount::incrementAndGet);
+            fileWatchService.register(file, fileCount::incrementAndGet);
+            Thread.sleep(500);
+
+            // deletion of the watched folder and of the parent of the watched file
+            FileHelper.deleteFolder(folder);
+            FileHelper.deleteFolder(parent);
+            Thread.sleep(500);
+            Assert.assertTrue(folder.mkdir());
+            Assert.assertTrue(parent.mkdir());
+            Thread.sleep(500);
+            int folderCountBeforeModification = folderCount.get();
+            int fileCountBeforeModification = fileCount.get();
+
+            // the modifications of the recreated folders are still detected
+            long lastModified = System.currentTimeMillis() + 10000;
+            File folderFile = new File(folder, "file.txt");
+            Files.write(folderFile.toPath(), "TEST".getBytes());
+            folderFile.setLastModified(lastModified);
+            Files.write(file.toPath(), "TEST".getBytes());
+            file.setLastModified(lastModified);
+            long timeout = System.currentTimeMillis() + 5000;
+            while ((folderCount.get() == folderCountBeforeModification || fileCount.get() == fileCountBeforeModification)
+                    && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(folderCountBeforeModification + 1, folderCount.get());
+            Assert.assertEquals(fileCountBeforeModification + 1, fileCount.get());
+        } finally {
+            FileHelper.deleteFolder(root);
+        }
+    }
+
+    @Test
+    public void testSymbolicLinks() throws InterruptedException, IOException {
+        // Layout of a Kubernetes ConfigMap mount, updated by swapping the "..data" link
+        File folder = FileHelper.createTempFolder();
+        try (FileWatchService fileWatchService = new FileWatchService(true)) {
+            fileWatchService.setInterval(10);
+            Path root = folder.toPath();
+            Files.createDirectory(root.resolve("..v1"));
+            Files.write(root.resolve("..v1/app.properties"), "version=1".getBytes());
+            Files.createSymbolicLink(root.resolve("..data"), Paths.get("..v1"));
+            Files.createSymbolicLink(root.resolve("app.properties"), Paths.get("..data/app.properties"));
+
+            AtomicInteger fileCount = new AtomicInteger();
+            AtomicInteger folderCount = new AtomicInteger();
+            fileWatchService.register(root.resolve("app.properties").toFile(), fileCount::incrementAndGet);
+            fileWatchService.register(folder, folderCount::incrementAndGet);
+            // wait for the first check of the registrations
+            Thread.sleep(500);
+
+            Files.createDirectory(root.resolve("..v2"));
+            Files.write(root.resolve("..v2/app.properties"), "version=2".getBytes());
+            root.resolve("..v2/app.properties").toFile().setLastModified(System.currentTimeMillis() + 10000);
+            Files.createSymbolicLink(root.resolve("..data_tmp"), Paths.get("..v2"));
+            Files.move(root.resolve("..data_tmp"), root.resolve("..data"), StandardCopyOption.ATOMIC_MOVE);
+
+            long timeout = System.currentTimeMillis() + 5000;
+            while ((fileCount.get() == 0 || folderCount.get() == 0) && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(1, fileCount.get());
+            Assert.assertEquals(1, folderCount.get());
+        } finally {
+            FileHelper.deleteFolder(folder);
+        }
+    }
+
+    @Test
+    public void testSymbolicLinkCreatedInWatchedFolder() throws InterruptedException, IOException {
+        File folder = FileHelper.createTempFolder();
+        File target = FileHelper.createTempFolder();
+        try (FileWatchService fileWatchService = new FileWatchService(true)) {
+            fileWatchService.setInterval(10);
+            AtomicInteger count = new AtomicInteger();
+            fileWatchService.register(folder, count::incrementAndGet);
+
+            Files.createSymbolicLink(folder.toPath().resolve("link"), target.toPath());
+            Thread.sleep(500);
+            int countBeforeModification = count.get();
+
+            // modification of the target of the link, which doesn't produce any native event within the folder
+            File file = new File(target, "file.txt");
+            Files.write(file.toPath(), "TEST".getBytes());
+            file.setLastModified(System.currentTimeMillis() + 10000);
+            long timeout = System.currentTimeMillis() + 5000;
+            while (count.get() == countBeforeModification && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(countBeforeModification + 1, count.get());
+        } finally {
+            FileHelper.deleteFolder(folder);
+            FileHelper.deleteFolder(target);
+        }
+    }
+
+    @Test
+    public void testSharedInstance() {
+        FileWatchService sharedInstance = FileWatchService.getSharedInstance();
+        Assert.assertSame(sharedInstance, FileWatchService.getSharedInstance());
+        // closing the shared instance has no effect
+        sharedInstance.close();
+        Assert.assertTrue(sharedInstance.isAlive());
+    }
+
     @Test
     public void testConcurrentModification() throws Exception {
 
@@ -125,6 +433,16 @@ public class FileWatchServiceTest {
         Assert.assertEquals(0, exceptions.get());
     }
 
+    private void waitForUpdate(Object lock, final AtomicInteger updatedCount, int expected) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        synchronized (lock) {
+            while (updatedCount.get() < expected && System.currentTimeMillis() < timeout) {
+                lock.wait(100);
+            }
+        }
+        Assert.assertEquals(expected, updatedCount.get());
+    }
+
     private void touchAndWait(File file, Object lock, final AtomicInteger updatedCount, int expected, long lastModified) throws InterruptedException {
         synchronized (lock) {
             file.setLastModified(lastModified);
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright 2021 exense GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package ch.exense.commons.processes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Test;
+
+import ch.exense.commons.io.FileHelper;
+import ch.exense.commons.processes.ManagedProcess.ManagedProcessException;
+
+public class CdsArchiveCacheTest {
+
+    private static final String OUTPUT = "OK";
+
+    public static void main(String[] args) {
+        System.out.print(OUTPUT);
+    }
+
+    public static class CdsMain {
+        public static void main(String[] args) {
+            System.out.print(OUTPUT);
+        }
+    }
+
+    @Test
+    public void test() throws ManagedProcessException, IOException, TimeoutException, InterruptedException {
+        File archiveFolder = FileHelper.createTempFolder();
+        CdsArchiveCache cache = new CdsArchiveCache(archiveFolder);
+        ExternalJVMLauncher launcher = new ExternalJVMLauncher(javaExe(), FileHelper.createTempFolder(), null, cache);
+        boolean supportedClasspath = new CdsArchiveCache(FileHelper.createTempFolder()).prepare("java",
+            List.of(System.getProperty("java.class.path").split(File.pathSeparator)), List.of()) != null;
+
+        // the first launch creates the archive, which is published asynchronously once the JVM exited
+        launch(launcher);
+        if (supportedClasspath) {
+            waitFor(() -> cache.getLaunchCount(CdsArchiveCache.Mode.ARCHIVING) == 1);
+        }
+        launch(launcher);
+        launch(launcher);
+        if (supportedClasspath) {
+            waitFor(() -> cache.getLaunchCount(CdsArchiveCache.Mode.SHARED) == 2);
+            File[] archives = archiveFolder.listFiles();
+            assertEquals(1, archives.length);
+            assertTrue(archives[0].getName().endsWith(".jsa"));
+            assertTrue(cache.getAverageProcessLifetimeMs(CdsArchiveCache.Mode.SHARED) > 0);
+        } else {
+            // classpaths containing directories, as in the IDE, aren't supported. See testSharedArchive
+            assertEquals(0, cache.getLaunchCount(CdsArchiveCache.Mode.ARCHIVING));
+            assertEquals(0, cache.getLaunchCount(CdsArchiveCache.Mode.SHARED));
+        }
+    }
+
+    @Test
+    public void testSharedArchive() throws IOException, InterruptedException {
+        File archiveFolder = FileHelper.createTempFolder();
+        CdsArchiveCache cache = new CdsArchiveCache(archiveFolder);
+        File jar = new File(FileHelper.createTempFolder(), "main.jar");
+        String entryName = CdsMain.class.getName().replace('.', '/') + ".class";
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+             InputStream in = CdsMain.class.getClassLoader().getResourceAsStream(entryName)) {
+            out.putNextEntry(new JarEntry(entryName));
+            in.transferTo(out);
+        }
+        List<String> classpath = List.of(jar.getCanonicalPath());
+
+        assertEquals(CdsArchiveCache.Mode.ARCHIVING, run(cache, classpath, List.of()));
+        assertEquals(1, cache.getLaunchCount(CdsArchiveCache.Mode.ARCHIVING));
+        assertEquals(CdsArchiveCache.Mode.SHARED, run(cache, classpath, List.of()));
+        // the system properties don't affect the archive
+        assertEquals(CdsArchiveCache.Mode.SHARED, run(cache, classpath, List.of("-Dtest=true")));
+        assertEquals(2, cache.getLaunchCount(CdsArchiveCache.Mode.SHARED));
+        // other VM arguments lead to another archive
+        assertEquals(CdsArchiveCache.Mode.ARCHIVING, run(cache, classpath, List.of("-Xmx64m")));
+        assertEquals(CdsArchiveCache.Mode.SHARED, run(cache, classpath, List.of("-Xmx64m")));
+        assertEquals(2, archiveFolder.listFiles((dir, name) -> name.endsWith(".jsa")).length);
+
+        // a JAR replaced in place leads to a new archive once the classpath has been checked again
+        assertTrue(jar.setLastModified(jar.lastModified() + 10000));
+        Thread.sleep(CdsArchiveCache.CLASSPATH_CHECK_INTERVAL_MS);
+        assertEquals(CdsArchiveCache.Mode.ARCHIVING, run(cache, classpath, List.of()));
+        assertEquals(CdsArchiveCache.Mode.SHARED, run(cache, classpath, List.of()));
+    }
+
+    @Test
+    public void testUnsupportedClasspath() throws IOException {
+        File directory = FileHelper.createTempFolder();
+        assertNotNull(new CdsArchiveCache(FileHelper.createTempFolder()).prepare("java",
+            List.of(directory.getCanonicalPath()), List.of()));
+        assertTrue(new File(directory, "Test.class").createNewFile());
+        assertNull(new CdsArchiveCache(FileHelper.createTempFolder()).prepare("java",
+            List.of(directory.getCanonicalPath()), List.of()));
+    }
+
+    @Test
+    public void testConcurrentArchiving() throws IOException {
+        File archiveFolder = FileHelper.createTempFolder();
+        CdsArchiveCache cache = new CdsArchiveCache(archiveFolder);
+        List<String> classpath = List.of(new File("test.jar").getCanonicalPath());
+
+        // the idle JVMs of a pool don't create the archive
+        assertEquals(CdsArchiveCache.Mode.NONE, cache.prepare("java", classpath, List.of(), false).getMode());
+
+        CdsArchiveCache.Launch first = cache.prepare("java", classpath, List.of());
+        CdsArchiveCache.Launch second = cache.prepare("java", classpath, List.of());
+        assertEquals(CdsArchiveCache.Mode.ARCHIVING, first.getMode());
+        assertTrue(first.getVmArgs().stream().anyMatch(arg -> arg.startsWith("-XX:ArchiveClassesAtExit=")));
+        // the archive is being created by the first JVM, including for the other caches sharing the folder
+        assertEquals(CdsArchiveCache.Mode.NONE, second.getMode());
+        assertTrue(second.getVmArgs().isEmpty());
+        assertEquals(CdsArchiveCache.Mode.NONE, new CdsArchiveCache(archiveFolder).prepare("java", classpath, List.of()).getMode());
+
+        // another classpath has its own archive
+        assertEquals(CdsArchiveCache.Mode.ARCHIVING, cache.prepare("java", List.of(), List.of()).getMode());
+
+        // the lock isn't released by the abort of a started launch
+        first.onStart();
+        first.abort();
+        assertEquals(CdsArchiveCache.Mode.NONE, cache.prepare("java", classpath, List.of()).getMode());
+
+        // the archive is created again if the first JVM failed to create it
+        first.onExit(-1);
+        CdsArchiveCache.Launch third = cache.prepare("java", classpath, List.of());
+        assertEquals(CdsArchiveCache.Mode.ARCHIVING, third.getMode());
+
+        // the lock is released by the abort of a launch that hasn't been started
+        third.abort();
+        assertEquals(CdsArchiveCache.Mode.ARCHIVING, cache.prepare("java", classpath, List.of()).getMode());
+    }
+
+    private static CdsArchiveCache.Mode run(CdsArchiveCache cache, List<String> classpath, List<String> vmargs)
+        throws IOException, InterruptedException {
+        CdsArchiveCache.Launch launch = cache.prepare(javaExe(), classpath, vmargs);
+        List<String> command = new ArrayList<>();
+        command.add(javaExe());
+        command.addAll(launch.getVmArgs());
+        command.addAll(vmargs);
+        command.addAll(List.of("-cp", String.join(File.pathSeparator, classpath), CdsMain.class.getName()));
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        String output = new String(process.getInputStream().readAllBytes());
+        assertTrue(process.waitFor(10, TimeUnit.SECONDS));
+        assertEquals(OUTPUT, output);
+        launch.onExit(1);
+        return launch.getMode();
+    }
+
+    private static void launch(ExternalJVMLauncher launcher) throws ManagedProcessException, IOException,
+        TimeoutException, InterruptedException {
+        try (ManagedProcess process = launcher.launchExternalJVM("MyExternalProcess", CdsArchiveCacheTest.class,
+            List.of(), List.of())) {
+            process.waitFor(10000);
+            // the CDS logs don't pollute the standard output
+            assertEquals(OUTPUT, new String(Files.readAllBytes(process.getProcessOutputLog().toPath())));
+        }
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timeout while waiting for the condition", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static String javaExe() {
+        File exe = new File(new File(System.getProperty("java.home"), "bin"), "java");
+        return exe.exists() ? exe.getAbsolutePath() : "java";
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2021 exense GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package ch.exense.commons.processes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ForkedJvmBuilderTest {
+
+    @Test
+    public void testSharedClasspathArgFile() throws IOException {
+        File argFile;
+        try (ForkedJvmBuilder first = new ForkedJvmBuilder("java", "MainClass", List.of("-Xmx64m"), List.of("arg"))) {
+            List<String> command = first.getProcessCommand();
+            assertEquals(List.of("-Xmx64m", "MainClass", "arg"), command.subList(2, command.size()));
+            argFile = new File(command.get(1).substring(1));
+            assertTrue(argFile.exists());
+            assertTrue(Files.readString(argFile.toPath()).startsWith("-cp \""));
+
+            // the arg file is shared by the builders of the same classpath
+            try (ForkedJvmBuilder second = new ForkedJvmBuilder("java", "MainClass", List.of(), List.of())) {
+                assertEquals(command.get(1), second.getProcessCommand().get(1));
+            }
+            // and deleted once the last builder using it is closed
+            assertTrue(argFile.exists());
+            first.close();
+            assertFalse(argFile.exists());
+        }
+
+        // closing twice doesn't release the file of the other builders
+        ForkedJvmBuilder third = new ForkedJvmBuilder("java", "MainClass", List.of(), List.of());
+        third.close();
+        try (ForkedJvmBuilder fourth = new ForkedJvmBuilder("java", "MainClass", List.of(), List.of())) {
+            third.close();
+            assertTrue(new File(fourth.getProcessCommand().get(1).substring(1)).exists());
+        }
+    }
+
+    @Test
+    public void testBuildClasspath() throws IOException {
+        File file = ForkedJvmBuilder.buildClasspath();
+        try (ForkedJvmBuilder builder = new ForkedJvmBuilder("java", "MainClass", List.of(), List.of())) {
+            File sharedFile = new File(builder.getProcessCommand().get(1).substring(1));
+            assertNotEquals(sharedFile, file);
+            assertEquals(Files.readString(sharedFile.toPath()), Files.readString(file.toPath()));
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+}
@@ -21,7 +21,11 @@ import org.junit.Test;
 
 import java.io.*;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -216,6 +220,96 @@ public class ManagedProcessTest {
         assertEquals("Unable to start the process " + id + " twice. The process has already been started.", actual.getMessage());
     }
 
+    @Test
+    public void testStartAsync() throws Exception {
+        try (ManagedProcess managedProcess = new ManagedProcess("MyJavaProcess", Arrays.asList("java", "-version"))) {
+            CompletableFuture<Integer> exit = managedProcess.startAsync();
+            assertEquals(0, (int) exit.get(10, TimeUnit.SECONDS));
+            assertTrue(managedProcess.getProcessErrorLogAsString().contains("version"));
+            assertEquals(0, (int) managedProcess.onExit().get());
+        }
+    }
+
+    @Test
+    public void testStopAsync() throws Exception {
+        File tempExecutionFolder = FileHelper.createTempFolder();
+
+        // Create a java program that doesn't terminate when requested to
+        FileWriter fileWriter = new FileWriter(tempExecutionFolder.toPath().resolve("test.java").toFile());
+        fileWriter.write("public class Stubborn {\n" +
+            "    public static void main(String[] args) throws Exception {\n" +
+            "        Runtime.getRuntime().addShutdownHook(new Thread(() -> {\n" +
+            "            try { Thread.sleep(60000); } catch (InterruptedException e) { }\n" +
+            "        }));\n" +
+            "        System.out.println(\"started\");\n" +
+            "        Thread.sleep(60000);\n" +
+            "    }\n" +
+            "}");
+        fileWriter.close();
+
+        try (ManagedProcess managedProcess = new ManagedProcess("MyJavaProcess", Arrays.asList("java", "test.java"), tempExecutionFolder)) {
+            CompletableFuture<Integer> exit = managedProcess.startAsync();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!managedProcess.getProcessOutputLogAsString().startsWith("started")) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+
+            // the process is killed once the grace period elapsed
+            long start = System.currentTimeMillis();
+            managedProcess.stopAsync(500).get(10, TimeUnit.SECONDS);
+            assertTrue(System.currentTimeMillis() - start >= 500);
+            assertFalse(managedProcess.isAlive());
+            // the future returned by startAsync is a distinct dependent of the process termination
+            assertNotEquals(0, (int) exit.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testStopProcessTree() throws Exception {
+        File tempExecutionFolder = FileHelper.createTempFolder();
+
+        // Create a java program that doesn't terminate when requested to, started as a tree of 3 processes
+        FileWriter fileWriter = new FileWriter(tempExecutionFolder.toPath().resolve("test.java").toFile());
+        fileWriter.write("public class StubbornTree {\n" +
+            "    public static void main(String[] args) throws Exception {\n" +
+            "        Runtime.getRuntime().addShutdownHook(new Thread(() -> {\n" +
+            "            try { Thread.sleep(60000); } catch (InterruptedException e) { }\n" +
+            "        }));\n" +
+            "        int depth = Integer.parseInt(args[0]);\n" +
+            "        if (depth > 0) {\n" +
+            "            new ProcessBuilder(\"java\", \"test.java\", String.valueOf(depth - 1))\n" +
+            "                .redirectOutput(ProcessBuilder.Redirect.INHERIT).start();\n" +
+            "        } else {\n" +
+            "            System.out.println(\"started\");\n" +
+            "        }\n" +
+            "        Thread.sleep(60000);\n" +
+            "    }\n" +
+            "}");
+        fileWriter.close();
+
+        try (ManagedProcess managedProcess = new ManagedProcess("MyJavaProcess", Arrays.asList("java", "test.java", "2"), tempExecutionFolder)) {
+            managedProcess.start();
+            long deadline = System.currentTimeMillis() + 30000;
+            while (!managedProcess.getProcessOutputLogAsString().startsWith("started")) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+            List<ProcessHandle> descendants = managedProcess.getProcess().descendants().collect(Collectors.toList());
+            assertEquals(2, descendants.size());
+
+            // the whole tree is killed once the single grace period elapsed, rather than after a grace period per
+            // process. The termination of the descendants, which aren't children of this JVM, is detected by polling
+            long start = System.currentTimeMillis();
+            managedProcess.stop(2000);
+            long duration = System.currentTimeMillis() - start;
+            assertTrue(duration >= 2000);
+            assertTrue(duration < 6000);
+            assertFalse(managedProcess.isAlive());
+            descendants.forEach(descendant -> assertFalse(descendant.isAlive()));
+        }
+    }
+
     private void runAndTestProcess(ManagedProcess managedProcess)
         throws ManagedProcessException, TimeoutException, InterruptedException {
         managedProcess.start();
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2021 exense GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package ch.exense.commons.processes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import ch.exense.commons.io.FileHelper;
+import ch.exense.commons.processes.ManagedProcess.ManagedProcessException;
+
+public class WarmJvmPoolTest {
+
+    // maximum time to wait for the JVMs, can be increased on slow machines
+    private static final long TIMEOUT_MS = Long.getLong("WarmJvmPoolTest.timeoutMs", 10000);
+
+    public static void main(String[] args) {
+        System.out.print(String.join(",", args));
+    }
+
+    @Test
+    public void test() throws ManagedProcessException, IOException, TimeoutException, InterruptedException {
+        File logFolder = FileHelper.createTempFolder();
+        try (WarmJvmPool pool = new WarmJvmPool(1)) {
+            ExternalJVMLauncher launcher = new ExternalJVMLauncher(javaExe(), logFolder, pool);
+
+            // the first launch starts a new JVM and fills the pool
+            try (ManagedProcess process = launcher.launchExternalJVM("MyExternalProcess", WarmJvmPoolTest.class,
+                List.of(), List.of("first"))) {
+                process.waitFor(TIMEOUT_MS);
+                assertEquals("first", process.getProcessOutputLogAsString());
+            }
+            waitForIdleProcesses(pool, 1);
+
+            // the next launch is handed over to the idle JVM
+            try (ManagedProcess process = launcher.launchExternalJVM("MyExternalProcess", WarmJvmPoolTest.class,
+                List.of(), List.of("second", "with spaces"))) {
+                assertTrue(process.getId().startsWith("MyExternalProcess_"));
+                assertEquals(0, process.waitFor(TIMEOUT_MS));
+                assertEquals("second,with spaces", process.getProcessOutputLogAsString());
+            }
+            // and the pool is refilled
+            waitForIdleProcesses(pool, 1);
+
+            // launches with other VM arguments aren't served by this idle JVM
+            try (ManagedProcess process = launcher.launchExternalJVM("MyExternalProcess", WarmJvmPoolTest.class,
+                List.of("-Dtest=true"), List.of("third"))) {
+                process.waitFor(TIMEOUT_MS);
+                assertEquals("third", process.getProcessOutputLogAsString());
+            }
+            waitForIdleProcesses(pool, 2);
+        }
+    }
+
+    @Test
+    public void testMainClassFailure() throws ManagedProcessException, IOException, TimeoutException, InterruptedException {
+        try (WarmJvmPool pool = new WarmJvmPool(1)) {
+            ExternalJVMLauncher launcher = new ExternalJVMLauncher(javaExe(), FileHelper.createTempFolder(), pool);
+            launcher.launchExternalJVM("MyExternalProcess", WarmJvmPoolTest.class, List.of(), List.of()).close();
+            waitForIdleProcesses(pool, 1);
+
+            try (ManagedProcess process = launcher.launchExternalJVM("MyExternalProcess", "not.existing.MainClass",
+                List.of(), List.of(), true)) {
+                assertEquals(1, process.waitFor(TIMEOUT_MS));
+                assertTrue(process.getProcessErrorLogAsString().contains("ClassNotFoundException"));
+            }
+        }
+    }
+
+    @Test
+    public void testEviction() throws ManagedProcessException, IOException, TimeoutException, InterruptedException {
+        File logFolder = FileHelper.createTempFolder();
+        try (WarmJvmPool pool = new WarmJvmPool(1, 1, 2000)) {
+            ExternalJVMLauncher launcher = new ExternalJVMLauncher(javaExe(), logFolder, pool);
+            launcher.launchExternalJVM("MyExternalProcess", WarmJvmPoolTest.class, List.of(), List.of()).close();
+            waitForIdleProcesses(pool, 1);
+
+            // a launch with other VM arguments evicts the least recently used configuration
+            launcher.launchExternalJVM("MyExternalProcess", WarmJvmPoolTest.class, List.of("-Dtest=true"), List.of()).close();
+            assertEquals(1, pool.getConfigurationCount());
+            waitForIdleProcesses(pool, 1);
+
+            // the configurations that aren't launched are evicted after the idle timeout
+            waitForIdleProcesses(pool, 0);
+            assertEquals(0, pool.getConfigurationCount());
+        }
+    }
+
+    private static void waitForIdleProcesses(WarmJvmPool pool, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (pool.getIdleProcessCount() != count) {
+            assertTrue("Timeout while waiting for the pool", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static String javaExe() {
+        File exe = new File(new File(System.getProperty("java.home"), "bin"), "java");
+        return exe.exists() ? exe.getAbsolutePath() : "java";
+    }
+}
@@ -0,0 +1,78 @@
+package ch.exense.commons.resilience;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BackoffPolicyTest {
+
+    @Test
+    public void testFixed() {
+        BackoffPolicy policy = BackoffPolicy.fixed(100);
+        assertEquals(100, policy.delayMs(1, 0));
+        assertEquals(100, policy.delayMs(5, 100));
+    }
+
+    @Test
+    public void testExponential() {
+        BackoffPolicy policy = BackoffPolicy.exponential(100, 2);
+        assertEquals(100, policy.delayMs(1, 0));
+        assertEquals(200, policy.delayMs(2, 100));
+        assertEquals(800, policy.delayMs(4, 400));
+        assertEquals(Long.MAX_VALUE, policy.delayMs(100, 0));
+
+        BackoffPolicy capped = policy.capped(500);
+        assertEquals(400, capped.delayMs(3, 200));
+        assertEquals(500, capped.delayMs(4, 400));
+        assertEquals(500, capped.delayMs(100, 500));
+    }
+
+    @Test
+    public void testDecorrelatedJitter() {
+        BackoffPolicy policy = BackoffPolicy.decorrelatedJitter(100, 1000);
+        long previousDelay = 0;
+        boolean different = false;
+        for (int retry = 1; retry <= 100; retry++) {
+            long delay = policy.delayMs(retry, previousDelay);
+            assertTrue(delay >= 100);
+            assertTrue(delay <= Math.min(1000, Math.max(100, previousDelay) * 3));
+            different |= delay != previousDelay;
+            previousDelay = delay;
+        }
+        assertTrue("Delays should be randomized", different);
+    }
+
+    @Test
+    public void testDecorrelatedJitterUnbounded() {
+        BackoffPolicy policy = BackoffPolicy.decorrelatedJitter(100, Long.MAX_VALUE);
+        long previousDelay = 0;
+        for (int retry = 1; retry <= 100; retry++) {
+            long delay = policy.delayMs(retry, previousDelay);
+            assertTrue(delay >= 100);
+            previousDelay = delay;
+        }
+        // the upper bound saturates instead of overflowing
+        assertTrue(policy.delayMs(101, Long.MAX_VALUE / 2) >= 100);
+        assertTrue(policy.delayMs(102, Long.MAX_VALUE) >= 100);
+    }
+
+    @Test
+    public void testDecorrelatedJitterSpreadBelowMaximum() {
+        // the delays are drawn below the maximum rather than clamped to it
+        BackoffPolicy policy = BackoffPolicy.decorrelatedJitter(100, 150);
+        int atMaximum = 0;
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.delayMs(10, 10000);
+            assertTrue(delay >= 100 && delay <= 150);
+            if (delay == 150) {
+                atMaximum++;
+            }
+        }
+        assertTrue(atMaximum < 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMultiplier() {
+        BackoffPolicy.exponential(100, 0.5);
+    }
+}
@@ -0,0 +1,194 @@
+package ch.exense.commons.resilience;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BulkheadTest {
+
+    @Test
+    public void testFixedLimit() throws Exception {
+        // Given: 2 concurrent calls and 1 queued call allowed
+        Bulkhead bulkhead = Bulkhead.fixed("test", 2, 1, 5000);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger maxConcurrency = new AtomicInteger();
+        AtomicInteger concurrency = new AtomicInteger();
+        RetryHelper.CheckedSupplier<String> operation = bulkhead.decorate(() -> {
+            maxConcurrency.accumulateAndGet(concurrency.incrementAndGet(), Math::max);
+            try {
+                release.await();
+            } finally {
+                concurrency.decrementAndGet();
+            }
+            return "ok";
+        });
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            Future<String> first = executor.submit(operation::get);
+            Future<String> second = executor.submit(operation::get);
+            waitFor(() -> bulkhead.getInFlightCallCount() == 2);
+            Future<String> queued = executor.submit(operation::get);
+            waitFor(() -> bulkhead.getQueuedCallCount() == 1);
+
+            // When: the queue is full
+            try {
+                bulkhead.execute(() -> "rejected");
+                fail("Should have thrown BulkheadFullException");
+            } catch (Bulkhead.BulkheadFullException e) {
+                assertEquals(1, bulkhead.getRejectedCallCount());
+            }
+
+            // Then: the queued call is executed once a permit is released
+            release.countDown();
+            assertEquals("ok", first.get(5, TimeUnit.SECONDS));
+            assertEquals("ok", second.get(5, TimeUnit.SECONDS));
+            assertEquals("ok", queued.get(5, TimeUnit.SECONDS));
+            assertEquals(2, maxConcurrency.get());
+            assertEquals(0, bulkhead.getInFlightCallCount());
+            assertEquals(0, bulkhead.getQueuedCallCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMaxWait() throws Exception {
+        Bulkhead bulkhead = Bulkhead.fixed("test", 1, 10, 50);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> {
+            try {
+                return bulkhead.execute(() -> {
+                    release.await();
+                    return "ok";
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        waitFor(() -> bulkhead.getInFlightCallCount() == 1);
+
+        long start = System.currentTimeMillis();
+        try {
+            bulkhead.execute(() -> "rejected");
+            fail("Should have thrown BulkheadFullException");
+        } catch (Bulkhead.BulkheadFullException e) {
+            assertTrue(System.currentTimeMillis() - start >= 50);
+            assertEquals(0, bulkhead.getQueuedCallCount());
+        }
+        release.countDown();
+        assertEquals("ok", running.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAdaptiveLimit() throws Exception {
+        Bulkhead bulkhead = Bulkhead.adaptive("test", 10, 2, 20, 0, 0);
+
+        // business failures and interruptions don't change the limit
+        for (int i = 0; i < 50; i++) {
+            try {
+                bulkhead.execute(() -> {
+                    throw new IOException("Failure");
+                });
+                fail("Should have thrown IOException");
+            } catch (IOException e) {
+                // expected
+            }
+            try {
+                bulkhead.execute(() -> {
+                    throw new InterruptedException();
+                });
+                fail("Should have thrown InterruptedException");
+            } catch (InterruptedException e) {
+                // expected
+            }
+        }
+        assertEquals(10, bulkhead.getLimit());
+
+        // timeouts, possibly wrapped, decrease the limit down to the minimum
+        for (int i = 0; i < 50; i++) {
+            try {
+                bulkhead.execute(() -> {
+                    throw new IOException(new TimeoutException("Timeout"));
+                });
+                fail("Should have thrown IOException");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        assertEquals(2, bulkhead.getLimit());
+
+        // the limit isn't increased by calls not using it
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("ok", bulkhead.execute(() -> "ok"));
+        }
+        assertEquals(2, bulkhead.getLimit());
+
+        // concurrent successful calls using the limit increase it additively
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int i = 0; i < 8; i++) {
+                executor.submit(() -> {
+                    for (int j = 0; j < 20; j++) {
+                        try {
+                            bulkhead.execute(() -> {
+                                Thread.sleep(2);
+                                return "ok";
+                            });
+                        } catch (Bulkhead.BulkheadFullException e) {
+                            // expected as no call is queued
+                        }
+                    }
+                    return null;
+                });
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(bulkhead.getLimit() > 2);
+        assertTrue(bulkhead.getLimit() <= 20);
+        assertTrue(bulkhead.getRejectedCallCount() > 0);
+    }
+
+    @Test
+    public void testAdaptiveLimitWithOverloadClassifier() throws Exception {
+        Bulkhead bulkhead = Bulkhead.adaptive("test", 10, 2, 20, 0, 0,
+            RetryableExceptionClassifier.of(List.of(IllegalStateException.class)));
+        try {
+            bulkhead.execute(() -> {
+                throw new TimeoutException("Timeout");
+            });
+            fail("Should have thrown TimeoutException");
+        } catch (TimeoutException e) {
+            assertEquals(10, bulkhead.getLimit());
+        }
+        try {
+            bulkhead.execute(() -> {
+                throw new IllegalStateException("Overloaded");
+            });
+            fail("Should have thrown IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals(9, bulkhead.getLimit());
+        }
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timeout while waiting for the condition", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
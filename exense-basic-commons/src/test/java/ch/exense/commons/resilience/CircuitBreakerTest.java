@@ -0,0 +1,116 @@
+package ch.exense.commons.resilience;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testStateTransitions() throws Exception {
+        // Given: a breaker opening at 50% of failures over 4 calls
+        CircuitBreaker breaker = new CircuitBreaker("test", 4, 4, 0.5, 100, 2);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("ok", breaker.execute(() -> "ok"));
+        assertEquals("ok", breaker.execute(() -> "ok"));
+        failingCall(breaker, calls);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        failingCall(breaker, calls);
+
+        // Then: the breaker is open and rejects the calls without executing them
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        try {
+            breaker.execute(calls::incrementAndGet);
+            fail("Should have thrown CallNotPermittedException");
+        } catch (CircuitBreaker.CallNotPermittedException e) {
+            assertEquals(2, calls.get());
+            assertEquals(1, breaker.getNotPermittedCallCount());
+        }
+
+        // When: the open duration elapsed, a failing probe opens the breaker again
+        Thread.sleep(150);
+        failingCall(breaker, calls);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        // When: the probes succeed, the breaker closes with an empty window
+        Thread.sleep(150);
+        assertEquals("ok", breaker.execute(() -> "ok"));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertEquals("ok", breaker.execute(() -> "ok"));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(-1, breaker.getFailureRate(), 0);
+    }
+
+    @Test
+    public void testHalfOpenProbesAreLimited() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 1, 1, 0, 1);
+        failingCall(breaker, new AtomicInteger());
+
+        // the single probe is permitted, concurrent calls are rejected while it is running
+        String result = breaker.execute(() -> {
+            try {
+                breaker.execute(() -> "nested");
+                fail("Should have thrown CallNotPermittedException");
+            } catch (CircuitBreaker.CallNotPermittedException e) {
+                // expected
+            }
+            return "probe";
+        });
+        assertEquals("probe", result);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testWithRetryHelper() throws Exception {
+        // Given: a breaker opening after 2 failures
+        CircuitBreaker breaker = new CircuitBreaker("test", 2, 2, 1, 60_000, 1);
+        AtomicInteger attemptCount = new AtomicInteger(0);
+        RetryHelper.CheckedSupplier<String> operation = breaker.decorate(() -> {
+            attemptCount.incrementAndGet();
+            throw new SocketTimeoutException("Timeout");
+        });
+
+        // When: the breaker opens during the retries
+        try {
+            RetryHelper.executeWithRetryOnExceptions(operation, 5, 10, RetryHelper.COMMON_NETWORK_EXCEPTIONS,
+                "Test circuit breaker");
+            fail("Should have thrown CallNotPermittedException");
+        } catch (CircuitBreaker.CallNotPermittedException e) {
+            // Then: the remaining attempts aren't executed
+            assertEquals(2, attemptCount.get());
+        }
+
+        // subsequent executions fail fast
+        long start = System.nanoTime();
+        try {
+            RetryHelper.executeWithRetryOnExceptions(operation, 5, 1000, RetryHelper.COMMON_NETWORK_EXCEPTIONS,
+                "Test circuit breaker");
+            fail("Should have thrown CallNotPermittedException");
+        } catch (CircuitBreaker.CallNotPermittedException e) {
+            assertEquals(2, attemptCount.get());
+            assertTrue(System.nanoTime() - start < 500_000_000L);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreshold() {
+        new CircuitBreaker("test", 10, 5, 0, 1000, 1);
+    }
+
+    private static void failingCall(CircuitBreaker breaker, AtomicInteger calls) throws Exception {
+        try {
+            breaker.execute(() -> {
+                calls.incrementAndGet();
+                throw new IOException("Failure");
+            });
+            fail("Should have thrown IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package ch.exense.commons.resilience;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HedgedExecutorTest {
+
+    @Test
+    public void testFastOperationIsNotHedged() throws Exception {
+        HedgedExecutor executor = HedgedExecutor.fixedDelay("test", 100, null);
+        AtomicInteger attemptCount = new AtomicInteger();
+
+        assertEquals("ok", executor.execute(() -> {
+            attemptCount.incrementAndGet();
+            return "ok";
+        }));
+        Thread.sleep(150);
+        assertEquals(1, attemptCount.get());
+        assertEquals(0, executor.getHedgedExecutionCount());
+    }
+
+    @Test
+    public void testHedgeWinsAndLoserIsCancelled() throws Exception {
+        // Given: a first attempt that hangs
+        HedgedExecutor executor = HedgedExecutor.fixedDelay("test", 50, null);
+        AtomicInteger attemptCount = new AtomicInteger();
+        CountDownLatch loserInterrupted = new CountDownLatch(1);
+
+        // When
+        long start = System.currentTimeMillis();
+        String result = executor.execute(() -> {
+            if (attemptCount.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    loserInterrupted.countDown();
+                    throw e;
+                }
+                return "slow";
+            }
+            return "hedge";
+        });
+
+        // Then
+        assertEquals("hedge", result);
+        assertTrue(System.currentTimeMillis() - start < 5_000);
+        assertTrue("The slow attempt should be cancelled", loserInterrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, executor.getHedgedExecutionCount());
+        assertEquals(1, executor.getHedgeWinCount());
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        HedgedExecutor executor = HedgedExecutor.fixedDelay("test", 20, null);
+
+        // a failure of the first attempt before the hedge delay is propagated
+        AtomicInteger attemptCount = new AtomicInteger();
+        try {
+            executor.execute(() -> {
+                attemptCount.incrementAndGet();
+                throw new IOException("Failure");
+            });
+            fail("Should have thrown IOException");
+        } catch (IOException e) {
+            Thread.sleep(50);
+            assertEquals(1, attemptCount.get());
+        }
+
+        // the execution fails if both attempts fail, the last failure being propagated
+        attemptCount.set(0);
+        CompletableFuture<String> future = executor.executeAsync(() -> {
+            if (attemptCount.incrementAndGet() == 1) {
+                Thread.sleep(100);
+                throw new IOException("First");
+            }
+            throw new IllegalStateException("Hedge");
+        });
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Should have thrown ExecutionException");
+        } catch (ExecutionException e) {
+            assertEquals("First", e.getCause().getMessage());
+            assertEquals(2, attemptCount.get());
+        }
+    }
+
+    @Test
+    public void testError() throws Exception {
+        HedgedExecutor executor = HedgedExecutor.fixedDelay("test", 1000, null);
+        try {
+            executor.execute(() -> {
+                throw new AssertionError("Error");
+            });
+            fail("Should have thrown AssertionError");
+        } catch (AssertionError e) {
+            assertEquals("Error", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testRetryBudget() throws Exception {
+        // Given: a budget allowing a single hedge
+        HedgedExecutor executor = HedgedExecutor.fixedDelay("test", 10, new RetryBudget(0.001, 1));
+        RetryHelper.CheckedSupplier<String> slowOperation = () -> {
+            Thread.sleep(100);
+            return "ok";
+        };
+
+        assertEquals("ok", executor.execute(slowOperation));
+        assertEquals("ok", executor.execute(slowOperation));
+        assertEquals(1, executor.getHedgedExecutionCount());
+    }
+
+    @Test
+    public void testPercentileDelay() throws Exception {
+        HedgedExecutor executor = HedgedExecutor.percentileDelay("test", 0.95, 1, 1000, null);
+        assertEquals(1000, executor.getHedgeDelayMs());
+
+        for (int i = 0; i < 64; i++) {
+            executor.execute(() -> "ok");
+        }
+        // the latencies are below a millisecond
+        assertEquals(1, executor.getHedgeDelayMs());
+    }
+
+    @Test
+    public void testPercentileDelayWithHedgeWins() throws Exception {
+        HedgedExecutor executor = HedgedExecutor.percentileDelay("test", 0.5, 1, 1000, null);
+        for (int i = 0; i < 64; i++) {
+            executor.execute(() -> {
+                Thread.sleep(20);
+                return "ok";
+            });
+        }
+        assertTrue(executor.getHedgeDelayMs() >= 20);
+
+        // slow first attempts beaten by fast hedges: the latencies are measured from the start of the executions and
+        // the delay doesn't drift towards the latency of the hedges
+        for (int i = 0; i < 64; i++) {
+            AtomicInteger attemptCount = new AtomicInteger();
+            executor.execute(() -> {
+                if (attemptCount.incrementAndGet() == 1) {
+                    Thread.sleep(1000);
+                }
+                return "ok";
+            });
+        }
+        assertEquals(64, executor.getHedgeWinCount());
+        assertTrue(executor.getHedgeDelayMs() >= 20);
+    }
+}
@@ -0,0 +1,63 @@
+package ch.exense.commons.resilience;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RetryBudgetTest {
+
+    @Test
+    public void testBudget() {
+        // Given: 10% of the requests may be retried, at most 2 retries accumulated
+        RetryBudget budget = new RetryBudget(0.1, 2);
+
+        // Then: the initial tokens allow 2 retries
+        assertTrue(budget.tryAcquireRetry());
+        assertTrue(budget.tryAcquireRetry());
+        assertFalse(budget.tryAcquireRetry());
+
+        // 10 requests allow one more retry
+        for (int i = 0; i < 9; i++) {
+            budget.onRequest();
+        }
+        assertFalse(budget.tryAcquireRetry());
+        budget.onRequest();
+        assertTrue(budget.tryAcquireRetry());
+
+        // the accumulated tokens are capped
+        for (int i = 0; i < 1000; i++) {
+            budget.onRequest();
+        }
+        assertEquals(2.0, budget.getAvailableRetries(), 0.0001);
+
+        // a token given back for a retry that didn't take place is available again, within the cap
+        assertTrue(budget.tryAcquireRetry());
+        budget.releaseRetry();
+        assertEquals(2.0, budget.getAvailableRetries(), 0.0001);
+        budget.releaseRetry();
+        assertEquals(2.0, budget.getAvailableRetries(), 0.0001);
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        RetryBudget budget = new RetryBudget(1, 100);
+        AtomicInteger acquired = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            executor.submit(() -> {
+                if (budget.tryAcquireRetry()) {
+                    acquired.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(100, acquired.get());
+        assertEquals(0.0, budget.getAvailableRetries(), 0.0001);
+    }
+}
@@ -7,6 +7,12 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
@@ -396,6 +402,176 @@ public class RetryHelperTest {
         assertEquals(4, attemptCount.get());
     }
 
+    @Test
+    public void testAsyncSuccessAfterRetries() throws Exception {
+        // Given
+        AtomicInteger attemptCount = new AtomicInteger(0);
+
+        // When
+        CompletableFuture<String> future = RetryHelper.executeWithRetryOnExceptionsAsync(
+            () -> {
+                int attempt = attemptCount.incrementAndGet();
+                if (attempt < 3) {
+                    throw new SocketTimeoutException("Simulated timeout");
+                }
+                return "success";
+            },
+            3,
+            50,
+            RetryHelper.COMMON_NETWORK_EXCEPTIONS,
+            "Test async operation with retries"
+        );
+
+        // Then
+        assertEquals("success", future.get(5, TimeUnit.SECONDS));
+        assertEquals("Should succeed on third attempt", 3, attemptCount.get());
+    }
+
+    @Test
+    public void testAsyncFailures() throws Exception {
+        // Given
+        AtomicInteger attemptCount = new AtomicInteger(0);
+
+        // When
+        CompletableFuture<String> future = RetryHelper.executeWithRetryOnExceptionsAsync(
+            () -> {
+                attemptCount.incrementAndGet();
+                throw new SocketTimeoutException("Timeout");
+            },
+            2,
+            10,
+            RetryHelper.COMMON_NETWORK_EXCEPTIONS,
+            "Test async max retries"
+        );
+        CompletableFuture<String> nonRetryableFuture = RetryHelper.executeWithRetryOnExceptionsAsync(
+            () -> {
+                throw new IllegalArgumentException("Invalid argument");
+            },
+            2,
+            10,
+            RetryHelper.COMMON_NETWORK_EXCEPTIONS,
+            "Test async non-retryable exception"
+        );
+
+        // Then
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Should have thrown ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+            assertEquals("Should attempt 1 initial + 2 retries", 3, attemptCount.get());
+        }
+        try {
+            nonRetryableFuture.get(5, TimeUnit.SECONDS);
+            fail("Should have thrown ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void testAsyncCancellationAndTimeout() throws Exception {
+        // Given
+        AtomicInteger attemptCount = new AtomicInteger(0);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        RetryHelper.CheckedSupplier<String> operation = () -> {
+            attemptCount.incrementAndGet();
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return "success";
+        };
+
+        // When: cancellation
+        CompletableFuture<String> future = RetryHelper.executeWithRetryOnExceptionsAsync(operation, 3, 10,
+            List.of(InterruptedException.class), "Test async cancellation");
+        Thread.sleep(100);
+        future.cancel(true);
+
+        // Then
+        assertTrue("The running attempt should be interrupted", interrupted.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals("Should stop retrying after cancellation", 1, attemptCount.get());
+
+        // When: overall timeout
+        long start = System.currentTimeMillis();
+        CompletableFuture<String> timedOutFuture = RetryHelper.executeWithRetryOnExceptionsAsync(
+            () -> {
+                throw new SocketTimeoutException("Timeout");
+            },
+            1000,
+            50,
+            RetryHelper.COMMON_NETWORK_EXCEPTIONS,
+            "Test async timeout",
+            300
+        );
+
+        // Then
+        try {
+            timedOutFuture.get(5, TimeUnit.SECONDS);
+            fail("Should have thrown ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+            assertTrue(System.currentTimeMillis() - start < 2000);
+        }
+    }
+
+    @Test
+    public void testBackoffPolicyAndRetryBudget() {
+        // Given: a budget allowing a single retry
+        AtomicInteger attemptCount = new AtomicInteger(0);
+        RetryBudget budget = new RetryBudget(0.01, 1);
+        long startTime = System.currentTimeMillis();
+
+        // When/Then
+        try {
+            RetryHelper.executeWithRetryOnExceptions(
+                () -> {
+                    attemptCount.incrementAndGet();
+                    throw new SocketTimeoutException("Timeout");
+                },
+                5,
+                BackoffPolicy.exponential(100, 2),
+                budget,
+                RetryHelper.COMMON_NETWORK_EXCEPTIONS,
+                "Test retry budget"
+            );
+            fail("Should have thrown SocketTimeoutException");
+        } catch (SocketTimeoutException e) {
+            assertEquals("Should stop retrying once the budget is exhausted", 2, attemptCount.get());
+            assertTrue(System.currentTimeMillis() - startTime >= 100);
+        } catch (Exception e) {
+            fail("Unexpected exception type: " + e.getClass().getName());
+        }
+
+        // the budget is shared with the asynchronous retries
+        attemptCount.set(0);
+        CompletableFuture<String> future = RetryHelper.executeWithRetryOnExceptionsAsync(
+            () -> {
+                attemptCount.incrementAndGet();
+                throw new SocketTimeoutException("Timeout");
+            },
+            5,
+            BackoffPolicy.fixed(10),
+            budget,
+            RetryHelper.COMMON_NETWORK_EXCEPTIONS,
+            "Test async retry budget",
+            0
+        );
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Should have thrown ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+            assertEquals("Should not retry once the budget is exhausted", 1, attemptCount.get());
+        } catch (Exception e) {
+            fail("Unexpected exception type: " + e.getClass().getName());
+        }
+    }
+
     // Custom exception for testing
     private static class CustomException extends Exception {
         public CustomException(String message) {
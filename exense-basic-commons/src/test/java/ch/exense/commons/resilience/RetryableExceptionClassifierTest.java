@@ -0,0 +1,60 @@
+package ch.exense.commons.resilience;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class RetryableExceptionClassifierTest {
+
+    @Test
+    public void testClassification() {
+        RetryableExceptionClassifier classifier = RetryableExceptionClassifier.of(RetryHelper.COMMON_NETWORK_EXCEPTIONS);
+
+        assertTrue(classifier.isRetryable(new SocketTimeoutException()));
+        // subclasses of retryable exceptions are retryable
+        assertTrue(classifier.isRetryable(new ConnectException()));
+        assertFalse(classifier.isRetryable(new IOException()));
+        assertFalse(classifier.isRetryable(new IllegalStateException()));
+        assertFalse(classifier.isRetryable(null));
+
+        // the whole cause chain is inspected
+        Exception wrapped = new RuntimeException(new ExecutionException(new UncheckedIOException(new SocketException())));
+        assertTrue(classifier.isRetryable(wrapped));
+        assertFalse(classifier.isRetryable(new RuntimeException(new ExecutionException(new IOException()))));
+    }
+
+    @Test
+    public void testCyclicCauseChain() {
+        RetryableExceptionClassifier classifier = RetryableExceptionClassifier.of(List.of(SocketException.class));
+
+        RuntimeException first = new RuntimeException("first");
+        RuntimeException second = new RuntimeException("second", first);
+        RuntimeException third = new RuntimeException("third", second);
+        first.initCause(third);
+        assertFalse(classifier.isRetryable(third));
+        assertFalse(classifier.isRetryable(new IllegalStateException(third)));
+    }
+
+    @Test
+    public void testClassifierCache() {
+        List<Class<? extends Exception>> exceptions = new ArrayList<>(List.of(SocketException.class));
+        RetryableExceptionClassifier classifier = RetryHelper.classifierFor(exceptions);
+        assertSame(classifier, RetryHelper.classifierFor(new ArrayList<>(exceptions)));
+
+        // modifications of the list aren't hidden by the cache
+        exceptions.add(IllegalStateException.class);
+        RetryableExceptionClassifier modified = RetryHelper.classifierFor(exceptions);
+        assertNotSame(classifier, modified);
+        assertTrue(modified.isRetryable(new IllegalStateException()));
+        assertFalse(classifier.isRetryable(new IllegalStateException()));
+    }
+}